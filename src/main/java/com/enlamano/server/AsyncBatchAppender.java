@@ -0,0 +1,205 @@
+package com.enlamano.server;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+import ch.qos.logback.core.encoder.Encoder;
+
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Appender asíncrono de logback: el hilo de la petición solo encola el evento en un buffer
+ * acotado y un hilo de fondo lo escribe por lotes en stderr (o en un archivo), con un
+ * único flush por lote. Si el buffer se llena, los eventos INFO o de menor nivel se descartan
+ * sin bloquear y la cantidad descartada se informa en el siguiente lote; los WARN y ERROR
+ * esperan hasta {@code maxBlockMillis} un lugar en el buffer y, si no lo obtienen, se escriben
+ * directamente desde el hilo que los emite.
+ */
+public class AsyncBatchAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+
+    /** Valor de {@code file} que indica escribir en la salida de error estándar */
+    public static final String STDERR = "stderr";
+
+    private Encoder<ILoggingEvent> encoder;
+    private String file;
+    private int queueSize = 8192;
+    private int maxBatch = 512;
+    private long maxBlockMillis = 100;
+
+    private BlockingQueue<ILoggingEvent> queue;
+    private OutputStream out;
+    private Thread worker;
+    // Serializa las escrituras del hilo de fondo y las directas de WARN/ERROR
+    private final Object escritura = new Object();
+    private final AtomicLong descartados = new AtomicLong();
+    private final AtomicLong descartadosTotal = new AtomicLong();
+
+    @Override
+    public void start() {
+        if (encoder == null) {
+            addError("No se configuró encoder para " + name);
+            return;
+        }
+        try {
+            OutputStream destino = file == null || file.isEmpty() || STDERR.equals(file)
+                ? new FileOutputStream(FileDescriptor.err)
+                : new FileOutputStream(file, true);
+            out = new BufferedOutputStream(destino, 64 * 1024);
+        } catch (IOException e) {
+            addError("No se pudo abrir el destino de logs " + file, e);
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueSize);
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                procesar();
+            }
+        }, "log-writer");
+        worker.setDaemon(true);
+        super.start();
+        worker.start();
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        // Capturar el estado dependiente del hilo antes de pasar el evento al escritor
+        event.prepareForDeferredProcessing();
+        if (queue.offer(event)) {
+            return;
+        }
+        if (!event.getLevel().isGreaterOrEqual(Level.WARN)) {
+            descartados.incrementAndGet();
+            descartadosTotal.incrementAndGet();
+            return;
+        }
+        try {
+            if (queue.offer(event, maxBlockMillis, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        escribirDirecto(event);
+    }
+
+    private void escribirDirecto(ILoggingEvent event) {
+        byte[] bytes = encoder.encode(event);
+        synchronized (escritura) {
+            try {
+                out.write(bytes);
+                out.flush();
+            } catch (IOException e) {
+                addError("Error escribiendo evento de log", e);
+            }
+        }
+    }
+
+    private void procesar() {
+        List<ILoggingEvent> lote = new ArrayList<>(maxBatch);
+        while (isStarted() || !queue.isEmpty()) {
+            try {
+                ILoggingEvent primero = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (primero == null) {
+                    continue;
+                }
+                lote.add(primero);
+                queue.drainTo(lote, maxBatch - 1);
+                escribir(lote);
+            } catch (InterruptedException e) {
+                // stop(): vaciar lo pendiente y terminar
+                queue.drainTo(lote);
+                escribir(lote);
+                return;
+            } finally {
+                lote.clear();
+            }
+        }
+    }
+
+    private void escribir(List<ILoggingEvent> lote) {
+        // Se codifica fuera del lock para no demorar las escrituras directas de WARN/ERROR
+        List<byte[]> codificados = new ArrayList<>(lote.size());
+        for (ILoggingEvent event : lote) {
+            codificados.add(encoder.encode(event));
+        }
+        synchronized (escritura) {
+            try {
+                long perdidos = descartados.getAndSet(0);
+                if (perdidos > 0) {
+                    out.write(("[log-writer] " + Level.WARN + " " + getClass().getName() + " - " + perdidos
+                        + " eventos de log INFO o inferiores descartados por buffer lleno\n").getBytes(StandardCharsets.UTF_8));
+                }
+                for (byte[] bytes : codificados) {
+                    out.write(bytes);
+                }
+                out.flush();
+            } catch (IOException e) {
+                addError("Error escribiendo lote de logs", e);
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        // Resúmenes de errores suprimidos que aún no se informaron, mientras se puede escribir
+        if (getContext() instanceof LoggerContext) {
+            for (TurboFilter filtro : ((LoggerContext) getContext()).getTurboFilterList()) {
+                if (filtro instanceof ErrorRateLimitFilter) {
+                    ((ErrorRateLimitFilter) filtro).vaciar();
+                }
+            }
+        }
+        super.stop();
+        try {
+            worker.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Descartes posteriores al último lote
+        escribir(new ArrayList<ILoggingEvent>(0));
+    }
+
+    /**
+     * Eventos descartados por buffer lleno desde el arranque
+     */
+    public long getDescartados() {
+        return descartadosTotal.get();
+    }
+
+    public void setEncoder(Encoder<ILoggingEvent> encoder) {
+        this.encoder = encoder;
+    }
+
+    public void setFile(String file) {
+        this.file = file;
+    }
+
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public void setMaxBatch(int maxBatch) {
+        this.maxBatch = maxBatch;
+    }
+
+    public void setMaxBlockMillis(long maxBlockMillis) {
+        this.maxBlockMillis = maxBlockMillis;
+    }
+}
@@ -6,6 +6,7 @@ import org.eclipse.jetty.server.HttpConfiguration;
 import org.eclipse.jetty.server.HttpConnectionFactory;
 import org.eclipse.jetty.server.SecureRequestCustomizer;
 import org.eclipse.jetty.server.SslConnectionFactory;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
@@ -14,6 +15,10 @@ import org.slf4j.LoggerFactory;
 
 import javax.servlet.http.HttpServlet;
 import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Clase principal del servidor Axis que expone endpoints HTTPS/JSON
@@ -28,6 +33,10 @@ public class AxisServerMain {
     private static final String KEYSTORE_PATH = System.getProperty("server.keystore.path", "certificates/server-keystore.jks");
     private static final String KEYSTORE_PASSWORD = System.getProperty("server.keystore.password", "changeit");
     private static final String KEY_PASSWORD = System.getProperty("server.key.password", "changeit");
+    private static final int GZIP_MIN_SIZE = Integer.parseInt(System.getProperty("server.gzip.min.size", "1024"));
+    private static final boolean EXIT_WHEN_READY = Boolean.getBoolean("startup.exit.when.ready");
+    
+    private RatePublisher ratePublisher;
     
     public static void main(String[] args) {
         try {
@@ -41,9 +50,37 @@ public class AxisServerMain {
     
     public void startServer() throws Exception {
         logger.info("Iniciando servidor Axis EnLaMano...");
+        final StartupWarmup startupWarmup = new StartupWarmup();
+        ExecutorService arranque = Executors.newFixedThreadPool(3, ThreadingMode.threadFactory("arranque-"));
+        
+        // Inicializaciones independientes en paralelo: el contexto de Axis2 (la más costosa) y los
+        // codecs de respuesta, mientras este hilo configura Jetty
+        Future<BcuSoapClient> clienteFuturo = arranque.submit(new Callable<BcuSoapClient>() {
+            @Override
+            public BcuSoapClient call() {
+                long inicio = System.nanoTime();
+                BcuSoapClient cliente = new BcuSoapClient();
+                startupWarmup.registrarEtapa("clienteSoap", inicio);
+                return cliente;
+            }
+        });
+        arranque.submit(new Runnable() {
+            @Override
+            public void run() {
+                long inicio = System.nanoTime();
+                ResponseEncoder.negociar(ResponseEncoder.MIME_JSON);
+                startupWarmup.registrarEtapa("codecs", inicio);
+            }
+        });
         
-        // Crear servidor Jetty
-        Server server = new Server();
+        // Crear servidor Jetty (con hilos virtuales si el modo está activo)
+        Server server;
+        if (ThreadingMode.isVirtual()) {
+            logger.info("Modo de hilos virtuales habilitado");
+            server = new Server(new VirtualThreadPool());
+        } else {
+            server = new Server();
+        }
         
         // Configurar HTTP (para desarrollo)
         configureHttp(server);
@@ -54,25 +91,73 @@ public class AxisServerMain {
         // Configurar contexto de servlets
         ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
         context.setContextPath("/");
-        server.setHandler(context);
+        server.setHandler(configureGzip(context));
         
         // Registrar servlets
-        registerServlets(context);
+        final BcuSoapClient bcuSoapClient = clienteFuturo.get();
+        final BcuGatewayServlet bcuServlet = registerServlets(context, bcuSoapClient, startupWarmup);
+        
+        // Detención ordenada ante SIGTERM o System.exit
+        final Server servidor = server;
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                detener(servidor, bcuSoapClient);
+            }
+        }, "shutdown"));
+        
+        // Precalentar (conexiones al BCU, parseo y serialización) mientras arranca Jetty;
+        // /api/ready responde 503 hasta que termine
+        final ExecutorService ejecutor = arranque;
+        Future<?> precalentamiento = arranque.submit(new Runnable() {
+            @Override
+            public void run() {
+                startupWarmup.ejecutar(bcuSoapClient, bcuServlet, ejecutor);
+            }
+        });
         
         // Iniciar servidor
+        long inicioJetty = System.nanoTime();
         server.start();
+        startupWarmup.registrarEtapa("jetty", inicioJetty);
         logger.info("Servidor iniciado en:");
         logger.info("  - HTTP:  http://localhost:{}", HTTP_PORT);
         logger.info("  - HTTPS: https://localhost:{}", HTTPS_PORT);
         logger.info("Endpoints disponibles:");
         logger.info("  - POST http://localhost:{}/api/bcu/consulta", HTTP_PORT);
         logger.info("  - POST https://localhost:{}/api/bcu/consulta", HTTPS_PORT);
+        logger.info("  - GET  http://localhost:{}/api/bcu/stream?moneda=USD (SSE)", HTTP_PORT);
         logger.info("  - GET  http://localhost:{}/api/health", HTTP_PORT);
         logger.info("  - GET  https://localhost:{}/api/health", HTTPS_PORT);
+        logger.info("  - GET  http://localhost:{}{}", HTTP_PORT, HealthCheckServlet.RUTA_READY);
+        logger.info("  - POST http://localhost:{}/admin/jfr/start|stop, GET /admin/jfr/download", HTTP_PORT);
+        
+        precalentamiento.get();
+        arranque.shutdown();
+        
+        if (EXIT_WHEN_READY) {
+            // Corrida de entrenamiento (p. ej. para generar un archivo AppCDS con -XX:ArchiveClassesAtExit)
+            logger.info("startup.exit.when.ready activo: deteniendo el servidor");
+            System.exit(0);
+        }
         
         server.join();
     }
     
+    /**
+     * Detiene Jetty (los servlets liberan sus carriles), el publicador de cotizaciones y el cliente SOAP
+     */
+    private void detener(Server server, BcuSoapClient bcuSoapClient) {
+        logger.info("Deteniendo el servidor...");
+        try {
+            server.stop();
+        } catch (Exception e) {
+            logger.warn("Error deteniendo Jetty: {}", e.getMessage());
+        }
+        ratePublisher.shutdown();
+        bcuSoapClient.close();
+    }
+    
     private void configureHttp(Server server) {
         // Configuración HTTP básica para desarrollo
         HttpConfiguration httpConfig = new HttpConfiguration();
@@ -126,16 +211,57 @@ public class AxisServerMain {
         server.addConnector(httpsConnector);
     }
     
-    private void registerServlets(ServletContextHandler context) {
-        // Servlet principal para comunicación con BCU
-        HttpServlet bcuServlet = new BcuGatewayServlet();
-        context.addServlet(new ServletHolder(bcuServlet), "/api/bcu/*");
+    static GzipHandler configureGzip(ServletContextHandler context) {
+        // Compresión gzip de respuestas por encima del umbral (series históricas y lotes)
+        GzipHandler gzipHandler = new GzipHandler();
+        gzipHandler.setMinGzipSize(GZIP_MIN_SIZE);
+        gzipHandler.setIncludedMethods("GET", "POST");
+        gzipHandler.setIncludedMimeTypes(
+            ResponseEncoder.MIME_JSON,
+            ResponseEncoder.MIME_SMILE,
+            ResponseEncoder.MIME_CBOR);
+        gzipHandler.setHandler(context);
+        return gzipHandler;
+    }
+    
+    private BcuGatewayServlet registerServlets(ServletContextHandler context, BcuSoapClient bcuSoapClient,
+                                               StartupWarmup startupWarmup) {
+        // Cliente SOAP compartido: un único limitador de concurrencia hacia el BCU
+        PriorityLanes priorityLanes = new PriorityLanes(bcuSoapClient.getConfig());
+        
+        // Servlet principal para comunicación con BCU (asíncrono, procesa en carriles de prioridad)
+        BcuGatewayServlet bcuServlet = new BcuGatewayServlet(bcuSoapClient, priorityLanes);
+        ServletHolder bcuHolder = new ServletHolder(bcuServlet);
+        bcuHolder.setAsyncSupported(true);
+        context.addServlet(bcuHolder, "/api/bcu/*");
         
-        // Servlet de health check
-        HttpServlet healthServlet = new HealthCheckServlet();
-        context.addServlet(new ServletHolder(healthServlet), "/api/health");
+        // Push de cotizaciones del día por Server-Sent Events
+        ratePublisher = new RatePublisher(bcuSoapClient);
+        ServletHolder streamHolder = new ServletHolder(new RateStreamServlet(ratePublisher));
+        streamHolder.setAsyncSupported(true);
+        context.addServlet(streamHolder, "/api/bcu/stream");
+        
+        // Servlet de health check y readiness (listo tras el precalentamiento de arranque)
+        HttpServlet healthServlet = new HealthCheckServlet(bcuSoapClient, priorityLanes, ratePublisher, startupWarmup);
+        ServletHolder healthHolder = new ServletHolder(healthServlet);
+        context.addServlet(healthHolder, "/api/health");
+        context.addServlet(healthHolder, HealthCheckServlet.RUTA_READY);
+        
+        // Administración de grabaciones JFR (solo con admin.token y si la JVM incluye JFR)
+        HttpServlet jfrServlet = Diagnostico.get().adminServlet(bcuSoapClient.getConfig());
+        if (jfrServlet != null) {
+            context.addServlet(new ServletHolder(jfrServlet), "/admin/jfr/*");
+        }
+        
+        // Endpoint interno de replicación entre instancias (solo en modo peer)
+        PeerRateReplicator replicator = bcuSoapClient.getPeerReplicator();
+        if (replicator != null) {
+            HttpServlet peerServlet = new PeerRateServlet(bcuSoapClient, replicator);
+            context.addServlet(new ServletHolder(peerServlet), PeerRateReplicator.RUTA_INTERNA);
+        }
         
         logger.info("Servlets registrados correctamente");
+        return bcuServlet;
     }
     
     private void createSelfSignedKeystore() {
@@ -0,0 +1,333 @@
+package com.enlamano.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limitador adaptativo de concurrencia para las llamadas salientes al BCU.
+ * Ajusta el límite con AIMD a partir de los RTT observados: crece de forma aditiva
+ * mientras la latencia se mantiene cerca del mínimo y se reduce de forma
+ * multiplicativa ante latencia elevada, timeouts o errores de conexión, a lo sumo una vez por
+ * RTT: las llamadas que ya estaban en vuelo al reducir reflejan la misma congestión.
+ * Las llamadas que exceden el límite esperan brevemente en cola y luego se descartan.
+ * Las consultas interactivas en espera se atienden antes que las de lote, y el tráfico
+ * de lote solo puede ocupar una fracción del límite.
+ * Con varios endpoints, cada uno tiene su propio RTT mínimo de referencia: una consulta a un
+ * endpoint más lento no se interpreta como congestión.
+ */
+public class BcuConcurrencyLimiter {
+
+    private static final Logger logger = LoggerFactory.getLogger(BcuConcurrencyLimiter.class);
+
+    // Cantidad de muestras tras la cual se renueva el RTT mínimo de referencia
+    private static final int VENTANA_RTT = 500;
+
+    // RTT informado por la llamada en curso (endpoint que respondió y su latencia)
+    private static final ThreadLocal<Muestra> MUESTRA = new ThreadLocal<Muestra>() {
+        @Override
+        protected Muestra initialValue() {
+            return new Muestra();
+        }
+    };
+
+    private final int limiteMinimo;
+    private final int limiteMaximo;
+    private final int maxEnCola;
+    private final long maxEsperaNanos;
+    private final double factorReduccion;
+    private final double toleranciaRtt;
+    private final double fraccionBatch;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition disponibleInteractivo = lock.newCondition();
+    private final Condition disponibleBatch = lock.newCondition();
+
+    private double limite;
+    private long ultimaReduccionNanos;
+    private boolean reducido;
+    private int enVuelo;
+    private int enVueloBatch;
+    private int enColaInteractivo;
+    private int enColaBatch;
+    private final Map<String, LineaBase> lineasBase = new HashMap<>();
+
+    private final AtomicLong completadas = new AtomicLong();
+    private final AtomicLong rechazadas = new AtomicLong();
+    private final AtomicLong caidas = new AtomicLong();
+
+    public BcuConcurrencyLimiter(Properties config) {
+        this.limiteMinimo = Integer.parseInt(config.getProperty("limiter.min", "1"));
+        this.limiteMaximo = Integer.parseInt(config.getProperty("limiter.max", "100"));
+        this.maxEnCola = Integer.parseInt(config.getProperty("limiter.queue.max", "50"));
+        this.maxEsperaNanos = TimeUnit.MILLISECONDS.toNanos(
+            Long.parseLong(config.getProperty("limiter.queue.timeout.ms", "500")));
+        this.factorReduccion = Double.parseDouble(config.getProperty("limiter.backoff", "0.9"));
+        this.toleranciaRtt = Double.parseDouble(config.getProperty("limiter.rtt.tolerance", "2.0"));
+        this.fraccionBatch = Double.parseDouble(config.getProperty("limiter.batch.share", "0.8"));
+        this.limite = Math.max(limiteMinimo,
+            Math.min(limiteMaximo, Integer.parseInt(config.getProperty("limiter.initial", "10"))));
+    }
+
+    /**
+     * Informa, desde dentro de la llamada, el origen que respondió y su RTT propio (sin
+     * reintentos). Si la llamada no lo informa se usa su duración total con un origen común.
+     */
+    public static void informarRtt(String origen, long rttNanos) {
+        Muestra muestra = MUESTRA.get();
+        muestra.origen = origen;
+        muestra.rttNanos = rttNanos;
+    }
+
+    /**
+     * Ejecuta la llamada respetando el límite actual de concurrencia
+     */
+    public <T> T ejecutar(Callable<T> llamada) throws Exception {
+        return ejecutar(PriorityLanes.claseActual(), llamada);
+    }
+
+    <T> T ejecutar(TrafficClass clase, Callable<T> llamada) throws Exception {
+        boolean batch = clase == TrafficClass.BATCH;
+        long espera = System.nanoTime();
+        try {
+            adquirir(batch);
+        } finally {
+            RequestTrace.registrar(RequestTrace.Etapa.LIMITER, espera);
+        }
+        Muestra muestra = MUESTRA.get();
+        muestra.origen = null;
+        long inicio = System.nanoTime();
+        try {
+            T resultado = llamada.call();
+            long rtt = System.nanoTime() - inicio;
+            if (muestra.origen != null) {
+                liberar(batch, muestra.origen, muestra.rttNanos, true, false);
+            } else {
+                liberar(batch, "", rtt, true, false);
+            }
+            return resultado;
+        } catch (Exception e) {
+            liberar(batch, null, System.nanoTime() - inicio, false, esCongestion(e));
+            throw e;
+        }
+    }
+
+    private void adquirir(boolean batch) throws BcuSobrecargaException, InterruptedException {
+        lock.lock();
+        try {
+            if (puedeEntrar(batch)) {
+                entrar(batch);
+                return;
+            }
+            if (enColaInteractivo + enColaBatch >= maxEnCola) {
+                rechazadas.incrementAndGet();
+                throw new BcuSobrecargaException("Demasiadas consultas concurrentes al BCU, intente nuevamente");
+            }
+            if (batch) {
+                enColaBatch++;
+            } else {
+                enColaInteractivo++;
+            }
+            try {
+                long restante = maxEsperaNanos;
+                while (!puedeEntrar(batch)) {
+                    if (restante <= 0) {
+                        rechazadas.incrementAndGet();
+                        throw new BcuSobrecargaException("Tiempo de espera agotado en la cola hacia el BCU");
+                    }
+                    restante = (batch ? disponibleBatch : disponibleInteractivo).awaitNanos(restante);
+                }
+            } finally {
+                if (batch) {
+                    enColaBatch--;
+                } else {
+                    enColaInteractivo--;
+                }
+            }
+            entrar(batch);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean puedeEntrar(boolean batch) {
+        if (enVuelo >= (int) limite) {
+            return false;
+        }
+        // El lote cede el paso a las consultas interactivas en espera
+        return !batch || (enColaInteractivo == 0 && enVueloBatch < Math.max(1, (int) (limite * fraccionBatch)));
+    }
+
+    private void entrar(boolean batch) {
+        enVuelo++;
+        if (batch) {
+            enVueloBatch++;
+        }
+    }
+
+    /**
+     * @param rttNanos RTT del origen si hubo éxito; duración de la llamada si falló
+     * @param exito solo las llamadas exitosas aportan RTT: un fallo rápido (conexión rechazada)
+     *        no representa la latencia del BCU y dejaría el mínimo de referencia artificialmente bajo
+     */
+    private void liberar(boolean batch, String origen, long rttNanos, boolean exito, boolean congestion) {
+        lock.lock();
+        try {
+            enVuelo--;
+            if (batch) {
+                enVueloBatch--;
+            }
+
+            if (congestion) {
+                // Sin línea base todavía, la duración de la llamada fallida hace de RTT
+                long minimo = rttMinimoNanos();
+                reducir(minimo != Long.MAX_VALUE ? minimo : rttNanos);
+            } else if (exito) {
+                LineaBase lineaBase = lineasBase.get(origen);
+                if (lineaBase == null) {
+                    lineaBase = new LineaBase();
+                    lineasBase.put(origen, lineaBase);
+                }
+                lineaBase.registrar(rttNanos);
+                if (rttNanos > lineaBase.minimoNanos * toleranciaRtt) {
+                    reducir(lineaBase.minimoNanos);
+                } else if (enVuelo + 1 >= limite / 2) {
+                    // Solo crecer si el límite realmente se está utilizando
+                    limite = Math.min(limiteMaximo, limite + 1.0 / limite);
+                }
+            }
+
+            if (enColaInteractivo > 0) {
+                disponibleInteractivo.signal();
+            } else if (enColaBatch > 0) {
+                disponibleBatch.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (congestion) {
+            caidas.incrementAndGet();
+            logger.debug("Congestión detectada hacia el BCU, nuevo límite: {}", getLimite());
+        } else {
+            completadas.incrementAndGet();
+        }
+    }
+
+    /**
+     * Reducción multiplicativa, salvo que la anterior haya ocurrido hace menos de un RTT
+     */
+    private void reducir(long rttNanos) {
+        long ahora = System.nanoTime();
+        if (reducido && ahora - ultimaReduccionNanos < rttNanos) {
+            return;
+        }
+        limite = Math.max(limiteMinimo, limite * factorReduccion);
+        ultimaReduccionNanos = ahora;
+        reducido = true;
+    }
+
+    private long rttMinimoNanos() {
+        long minimo = Long.MAX_VALUE;
+        for (LineaBase lineaBase : lineasBase.values()) {
+            minimo = Math.min(minimo, lineaBase.minimoNanos);
+        }
+        return minimo;
+    }
+
+    private boolean esCongestion(Exception e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SocketTimeoutException || t instanceof ConnectException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getLimite() {
+        lock.lock();
+        try {
+            return (int) limite;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getEnVuelo() {
+        lock.lock();
+        try {
+            return enVuelo;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getEnCola() {
+        lock.lock();
+        try {
+            return enColaInteractivo + enColaBatch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Menor RTT de referencia entre los endpoints, o 0 si aún no hay muestras
+     */
+    public double getRttMinimoMillis() {
+        lock.lock();
+        try {
+            long minimo = rttMinimoNanos();
+            return minimo == Long.MAX_VALUE ? 0 : minimo / 1_000_000.0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getCompletadas() {
+        return completadas.get();
+    }
+
+    public long getRechazadas() {
+        return rechazadas.get();
+    }
+
+    public long getCaidas() {
+        return caidas.get();
+    }
+
+    /**
+     * RTT mínimo de referencia de un origen, renovado cada {@link #VENTANA_RTT} muestras
+     */
+    private static final class LineaBase {
+        private long minimoNanos = Long.MAX_VALUE;
+        private long minimoVentanaNanos = Long.MAX_VALUE;
+        private int muestrasVentana;
+
+        void registrar(long rttNanos) {
+            minimoNanos = Math.min(minimoNanos, rttNanos);
+            minimoVentanaNanos = Math.min(minimoVentanaNanos, rttNanos);
+            if (++muestrasVentana >= VENTANA_RTT) {
+                // Permite adaptarse si la latencia base del endpoint cambia
+                minimoNanos = minimoVentanaNanos;
+                minimoVentanaNanos = Long.MAX_VALUE;
+                muestrasVentana = 0;
+            }
+        }
+    }
+
+    private static final class Muestra {
+        private String origen;
+        private long rttNanos;
+    }
+}
@@ -7,7 +7,9 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -21,65 +23,171 @@ import java.io.PrintWriter;
 public class BcuGatewayServlet extends HttpServlet {
     
     private static final Logger logger = LoggerFactory.getLogger(BcuGatewayServlet.class);
+    // Cotizaciones de días pasados: el BCU no las modifica
+    private static final String CACHE_CONTROL_PASADA = "public, max-age=31536000, immutable";
     private final ObjectMapper objectMapper = new ObjectMapper();
     private final BcuSoapClient bcuSoapClient;
+    private final PriorityLanes priorityLanes;
+    private final SlowRequestLog slowRequestLog;
+    private final String cacheControlHoy;
     
     public BcuGatewayServlet() {
-        this.bcuSoapClient = new BcuSoapClient();
+        this(new BcuSoapClient());
+    }
+    
+    public BcuGatewayServlet(BcuSoapClient bcuSoapClient) {
+        this(bcuSoapClient, new PriorityLanes(bcuSoapClient.getConfig()));
+    }
+    
+    public BcuGatewayServlet(BcuSoapClient bcuSoapClient, PriorityLanes priorityLanes) {
+        this.bcuSoapClient = bcuSoapClient;
+        this.priorityLanes = priorityLanes;
+        this.slowRequestLog = new SlowRequestLog(bcuSoapClient.getConfig());
+        this.cacheControlHoy = "public, max-age="
+            + bcuSoapClient.getConfig().getProperty("http.max.age.today.seconds", "60");
     }
     
     @Override
-    protected void doPost(HttpServletRequest request, HttpServletResponse response) 
+    protected void doPost(final HttpServletRequest request, final HttpServletResponse response) 
             throws ServletException, IOException {
+        atender(request, response, null);
+    }
+    
+    /**
+     * Encola la petición en el carril de su clase. {@code consultaGet} es la consulta armada a
+     * partir de la URL en las peticiones GET; en POST es null y se lee del cuerpo.
+     */
+    private void atender(final HttpServletRequest request, final HttpServletResponse response,
+                         final JsonNode consultaGet) throws IOException {
         
-        logger.info("Recibiendo petición de NetSuite: {}", request.getRequestURI());
+        final TrafficClass clase = priorityLanes.clasificar(request);
+        final RequestTrace trace = new RequestTrace(request.getHeader(RequestTrace.HEADER_REQUEST_ID));
+        // La petición puede reciclarse tras complete(): conservar lo que se usa después
+        final String uri = request.getRequestURI();
+        response.setHeader(RequestTrace.HEADER_REQUEST_ID, trace.getId());
+        logger.info(RequestLogSamplingFilter.PETICION, "[{}] Recibiendo petición de NetSuite: {} (prioridad {})",
+            trace.getId(), uri, clase.getNombre());
         
+        // Liberar el hilo de Jetty: la petición se procesa en el carril de su clase
+        final AsyncContext asyncContext = request.startAsync();
+        asyncContext.setTimeout(0);
+        final long encolada = System.nanoTime();
+        try {
+            priorityLanes.ejecutar(clase, new Runnable() {
+                @Override
+                public void run() {
+                    trace.agregar(RequestTrace.Etapa.QUEUE, System.nanoTime() - encolada);
+                    trace.vincular();
+                    try {
+                        procesarPeticion(request, response, trace, clase, consultaGet);
+                    } finally {
+                        RequestTrace.desvincular();
+                        slowRequestLog.registrar(trace, uri, clase);
+                        asyncContext.complete();
+                    }
+                }
+            });
+        } catch (BcuSobrecargaException e) {
+            logger.warn("[{}] Petición descartada: {}", trace.getId(), e.getMessage());
+            handleError(response, e, trace);
+            asyncContext.complete();
+        }
+    }
+    
+    private void procesarPeticion(HttpServletRequest request, HttpServletResponse response,
+                                  RequestTrace trace, TrafficClass clase, JsonNode consultaGet) {
+        RegistroPeticion evento = Diagnostico.get().peticion();
+        evento.iniciar();
+        JsonNode requestJson = null;
+        byte[] cuerpo = null;
         try {
             // Configurar headers CORS
             response.setHeader("Access-Control-Allow-Origin", "*");
             response.setHeader("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
-            response.setHeader("Access-Control-Allow-Headers", "Content-Type");
-            
-            // Configurar respuesta JSON
-            response.setContentType("application/json");
-            response.setCharacterEncoding("UTF-8");
+            response.setHeader("Access-Control-Allow-Headers",
+                "Content-Type, X-Prioridad, X-Api-Key, X-Request-Id, If-None-Match");
+            response.setHeader("Access-Control-Expose-Headers", "Server-Timing, X-Request-Id, ETag");
+            response.setHeader("Timing-Allow-Origin", "*");
             
             // Leer petición JSON de NetSuite
-            JsonNode requestJson = readJsonRequest(request);
+            long inicioParse = System.nanoTime();
+            requestJson = consultaGet != null ? consultaGet : readJsonRequest(request);
             logger.debug("JSON recibido: {}", requestJson.toString());
             
             // Validar petición
             validateRequest(requestJson);
+            trace.agregar(RequestTrace.Etapa.PARSE, System.nanoTime() - inicioParse);
             
             // Determinar tipo de consulta
             String tipoConsulta = requestJson.path("tipoConsulta").asText();
             
+            // Formato negociado por Accept (JSON, Smile o CBOR)
+            ResponseEncoder.Formato formato = ResponseEncoder.negociar(request.getHeader("Accept"));
+            
+            // Cada consulta calcula sus claves de (moneda, fecha) una sola vez, al despacharse
+            JsonNode parametros = requestJson.path("parametros");
             ObjectNode responseJson;
-            switch (tipoConsulta) {
-                case "cotizacion":
-                    responseJson = procesarConsultaCotizacion(requestJson);
-                    break;
-                case "arbitraje":
-                    responseJson = procesarConsultaArbitraje(requestJson);
-                    break;
-                case "historico":
-                    responseJson = procesarConsultaHistorico(requestJson);
-                    break;
-                default:
-                    throw new IllegalArgumentException("Tipo de consulta no soportado: " + tipoConsulta);
+            if (consultaGet != null) {
+                responseJson = procesarConsultaCacheable(request, response, requestJson, formato, trace);
+                if (responseJson == null) {
+                    // 304: el cliente ya tiene esta representación
+                    return;
+                }
+            } else {
+                switch (tipoConsulta) {
+                    case "cotizacion":
+                        responseJson = procesarConsultaCotizacion(requestJson, clave(parametros, "moneda", "fecha"));
+                        break;
+                    case "arbitraje":
+                        responseJson = procesarConsultaArbitraje(requestJson,
+                            clave(parametros, "monedaOrigen", "fecha"), clave(parametros, "monedaDestino", "fecha"));
+                        break;
+                    case "historico":
+                        responseJson = procesarConsultaHistorico(requestJson,
+                            clave(parametros, "moneda", "fechaInicio"), clave(parametros, "moneda", "fechaFin"));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Tipo de consulta no soportado: " + tipoConsulta);
+                }
             }
             
             // Enviar respuesta
+            long inicioSerializacion = System.nanoTime();
+            cuerpo = formato.codificar(responseJson);
+            trace.agregar(RequestTrace.Etapa.SERIALIZE, System.nanoTime() - inicioSerializacion);
+            
             response.setStatus(HttpServletResponse.SC_OK);
-            PrintWriter writer = response.getWriter();
-            writer.write(responseJson.toString());
-            writer.flush();
+            response.setContentType(formato.getContentType());
+            response.setHeader("Vary", "Accept, Accept-Encoding");
+            response.setHeader("Server-Timing", trace.serverTiming());
+            response.setContentLength(cuerpo.length);
+            ServletOutputStream out = response.getOutputStream();
+            out.write(cuerpo);
+            out.flush();
             
-            logger.info("Respuesta enviada exitosamente");
+            logger.info(RequestLogSamplingFilter.PETICION, "[{}] Respuesta enviada exitosamente", trace.getId());
             
         } catch (Exception e) {
-            logger.error("Error procesando petición", e);
-            handleError(response, e);
+            logger.error("[{}] Error procesando petición", trace.getId(), e);
+            try {
+                handleError(response, e, trace);
+            } catch (IOException ioe) {
+                logger.warn("No se pudo enviar la respuesta de error: {}", ioe.getMessage());
+            }
+        } finally {
+            if (evento.terminar()) {
+                evento.requestId = trace.getId();
+                evento.prioridad = clase.getNombre();
+                evento.status = response.getStatus();
+                evento.bytes = cuerpo != null ? cuerpo.length : 0;
+                if (requestJson != null) {
+                    evento.tipoConsulta = requestJson.path("tipoConsulta").asText();
+                    JsonNode parametros = requestJson.path("parametros");
+                    evento.moneda = parametros.path("moneda").asText(parametros.path("monedaOrigen").asText());
+                    evento.fecha = parametros.path("fecha").asText(parametros.path("fechaInicio").asText());
+                }
+                evento.emitir();
+            }
         }
     }
     
@@ -110,16 +218,29 @@ public class BcuGatewayServlet extends HttpServlet {
         }
     }
     
-    private ObjectNode procesarConsultaCotizacion(JsonNode requestJson) throws Exception {
-        logger.info("Procesando consulta de cotización");
+    private static long clave(JsonNode parametros, String moneda, String fecha) {
+        return ClaveCotizacion.clave(parametros.path(moneda).asText(), parametros.path(fecha).asText());
+    }
+    
+    private ObjectNode procesarConsultaCotizacion(JsonNode requestJson, long clave) throws Exception {
+        logger.info(RequestLogSamplingFilter.PETICION, "[{}] Procesando consulta de cotización",
+            RequestTrace.idActual());
         
         JsonNode parametros = requestJson.path("parametros");
         String moneda = parametros.path("moneda").asText();
         String fecha = parametros.path("fecha").asText();
         
         // Llamar al web service SOAP del BCU
-        BcuSoapResponse soapResponse = bcuSoapClient.consultarCotizacion(moneda, fecha);
+        BcuSoapResponse soapResponse = bcuSoapClient.consultarCotizacion(clave, moneda, fecha);
         
+        return respuestaCotizacion(soapResponse, true);
+    }
+    
+    /**
+     * @param marcasDeTiempo incluir la hora de consulta al BCU y de procesamiento; las respuestas
+     *        GET las omiten para que la representación dependa solo de la cotización
+     */
+    private ObjectNode respuestaCotizacion(BcuSoapResponse soapResponse, boolean marcasDeTiempo) {
         // Consolidar respuesta JSON
         ObjectNode response = objectMapper.createObjectNode();
         response.put("status", "success");
@@ -130,19 +251,51 @@ public class BcuGatewayServlet extends HttpServlet {
         datos.put("fecha", soapResponse.getFecha());
         datos.put("compra", soapResponse.getCompra());
         datos.put("venta", soapResponse.getVenta());
-        datos.put("fechaConsulta", soapResponse.getFechaConsulta());
+        if (marcasDeTiempo) {
+            datos.put("fechaConsulta", soapResponse.getFechaConsulta());
+        }
         
         // Información adicional para NetSuite
         ObjectNode metadatos = response.putObject("metadatos");
         metadatos.put("fuente", "BCU");
-        metadatos.put("procesadoEn", System.currentTimeMillis());
+        if (marcasDeTiempo) {
+            metadatos.put("procesadoEn", System.currentTimeMillis());
+        }
         metadatos.put("version", "1.0");
         
         return response;
     }
     
-    private ObjectNode procesarConsultaArbitraje(JsonNode requestJson) throws Exception {
-        logger.info("Procesando consulta de arbitraje");
+    /**
+     * Recorre sin red el parseo de la petición y la serialización de la respuesta en todos los
+     * formatos, con datos sintéticos, para que el JIT los compile antes del tráfico real
+     */
+    void precalentar(int iteraciones) throws IOException {
+        String muestra = "{\"tipoConsulta\":\"cotizacion\",\"parametros\":{\"moneda\":\"USD\",\"fecha\":\"2024-01-15\"}}";
+        BcuSoapResponse cotizacion = new BcuSoapResponse();
+        cotizacion.setMoneda("USD");
+        cotizacion.setFecha("2024-01-15");
+        cotizacion.setCompra(39.125);
+        cotizacion.setVenta(39.875);
+        cotizacion.setFechaConsulta("2024-01-15 00:00:00");
+        
+        for (int i = 0; i < iteraciones; i++) {
+            RequestTrace trace = new RequestTrace(null);
+            JsonNode requestJson = objectMapper.readTree(muestra);
+            validateRequest(requestJson);
+            ObjectNode responseJson = respuestaCotizacion(cotizacion, true);
+            for (ResponseEncoder.Formato formato : ResponseEncoder.Formato.values()) {
+                formato.codificar(responseJson);
+            }
+            ResponseEncoder.negociar("application/json, */*;q=0.1");
+            trace.serverTiming();
+        }
+    }
+    
+    private ObjectNode procesarConsultaArbitraje(JsonNode requestJson, long claveOrigen, long claveDestino)
+            throws Exception {
+        logger.info(RequestLogSamplingFilter.PETICION, "[{}] Procesando consulta de arbitraje",
+            RequestTrace.idActual());
         
         JsonNode parametros = requestJson.path("parametros");
         String monedaOrigen = parametros.path("monedaOrigen").asText();
@@ -150,8 +303,8 @@ public class BcuGatewayServlet extends HttpServlet {
         String fecha = parametros.path("fecha").asText();
         
         // Llamar al web service SOAP del BCU para ambas monedas
-        BcuSoapResponse cotizacionOrigen = bcuSoapClient.consultarCotizacion(monedaOrigen, fecha);
-        BcuSoapResponse cotizacionDestino = bcuSoapClient.consultarCotizacion(monedaDestino, fecha);
+        BcuSoapResponse cotizacionOrigen = bcuSoapClient.consultarCotizacion(claveOrigen, monedaOrigen, fecha);
+        BcuSoapResponse cotizacionDestino = bcuSoapClient.consultarCotizacion(claveDestino, monedaDestino, fecha);
         
         // Calcular arbitraje
         ObjectNode response = objectMapper.createObjectNode();
@@ -178,8 +331,9 @@ public class BcuGatewayServlet extends HttpServlet {
         return response;
     }
     
-    private ObjectNode procesarConsultaHistorico(JsonNode requestJson) throws Exception {
-        logger.info("Procesando consulta histórica");
+    private ObjectNode procesarConsultaHistorico(JsonNode requestJson, long desde, long hasta) throws Exception {
+        logger.info(RequestLogSamplingFilter.PETICION, "[{}] Procesando consulta histórica",
+            RequestTrace.idActual());
         
         JsonNode parametros = requestJson.path("parametros");
         String moneda = parametros.path("moneda").asText();
@@ -187,7 +341,15 @@ public class BcuGatewayServlet extends HttpServlet {
         String fechaFin = parametros.path("fechaFin").asText();
         
         // Llamar al web service SOAP del BCU para datos históricos
-        BcuSoapResponse[] historicos = bcuSoapClient.consultarHistorico(moneda, fechaInicio, fechaFin);
+        BcuSoapResponse[] historicos = bcuSoapClient.consultarHistorico(desde, hasta, moneda, fechaInicio, fechaFin);
+        
+        return respuestaHistorico(parametros, historicos);
+    }
+    
+    private ObjectNode respuestaHistorico(JsonNode parametros, BcuSoapResponse[] historicos) {
+        String moneda = parametros.path("moneda").asText();
+        String fechaInicio = parametros.path("fechaInicio").asText();
+        String fechaFin = parametros.path("fechaFin").asText();
         
         ObjectNode response = objectMapper.createObjectNode();
         response.put("status", "success");
@@ -199,37 +361,196 @@ public class BcuGatewayServlet extends HttpServlet {
         datos.put("fechaFin", fechaFin);
         datos.put("totalRegistros", historicos.length);
         
-        // Agregar serie histórica
-        ArrayNode serieHistorica = datos.putArray("serie");
-        for (BcuSoapResponse historico : historicos) {
-            ObjectNode registro = serieHistorica.addObject();
-            registro.put("fecha", historico.getFecha());
-            registro.put("compra", historico.getCompra());
-            registro.put("venta", historico.getVenta());
+        // Agregar serie histórica: por registro (por defecto) o en columnas paralelas
+        if ("columnar".equals(parametros.path("formato").asText())) {
+            datos.put("formato", "columnar");
+            ArrayNode fechas = datos.putArray("fechas");
+            ArrayNode compras = datos.putArray("compra");
+            ArrayNode ventas = datos.putArray("venta");
+            for (BcuSoapResponse historico : historicos) {
+                fechas.add(historico.getFecha());
+                compras.add(historico.getCompra());
+                ventas.add(historico.getVenta());
+            }
+        } else {
+            ArrayNode serieHistorica = datos.putArray("serie");
+            for (BcuSoapResponse historico : historicos) {
+                ObjectNode registro = serieHistorica.addObject();
+                registro.put("fecha", historico.getFecha());
+                registro.put("compra", historico.getCompra());
+                registro.put("venta", historico.getVenta());
+            }
         }
         
         return response;
     }
     
-    private void handleError(HttpServletResponse response, Exception e) throws IOException {
-        response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+    /**
+     * Consulta GET de cotización o histórico. El ETag se calcula de los valores de las
+     * cotizaciones y del formato, antes de armar y serializar la respuesta: si coincide con
+     * If-None-Match se responde 304 sin cuerpo y devuelve null.
+     */
+    private ObjectNode procesarConsultaCacheable(HttpServletRequest request, HttpServletResponse response,
+                                                 JsonNode requestJson, ResponseEncoder.Formato formato,
+                                                 RequestTrace trace) throws Exception {
+        String tipoConsulta = requestJson.path("tipoConsulta").asText();
+        JsonNode parametros = requestJson.path("parametros");
+        boolean historico = "historico".equals(tipoConsulta);
+        logger.info(RequestLogSamplingFilter.PETICION, "[{}] Procesando consulta GET de {}",
+            trace.getId(), tipoConsulta);
+        
+        String moneda = parametros.path("moneda").asText();
+        BcuSoapResponse[] registros;
+        long ultima;
+        if (historico) {
+            long desde = clave(parametros, "moneda", "fechaInicio");
+            ultima = clave(parametros, "moneda", "fechaFin");
+            registros = bcuSoapClient.consultarHistorico(desde, ultima, moneda,
+                parametros.path("fechaInicio").asText(), parametros.path("fechaFin").asText());
+        } else {
+            ultima = clave(parametros, "moneda", "fecha");
+            registros = new BcuSoapResponse[] {
+                bcuSoapClient.consultarCotizacion(ultima, moneda, parametros.path("fecha").asText())
+            };
+        }
+        
+        String etag = calcularEtag(formato, parametros, registros);
+        response.setHeader("ETag", etag);
+        response.setHeader("Cache-Control", esPasada(ultima) ? CACHE_CONTROL_PASADA : cacheControlHoy);
+        response.setHeader("Vary", "Accept, Accept-Encoding");
+        
+        if (coincideEtag(request.getHeader("If-None-Match"), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            response.setHeader("Server-Timing", trace.serverTiming());
+            logger.info(RequestLogSamplingFilter.PETICION, "[{}] Sin cambios (304)", trace.getId());
+            return null;
+        }
+        return historico ? respuestaHistorico(parametros, registros) : respuestaCotizacion(registros[0], false);
+    }
+    
+    private static boolean esPasada(long clave) {
+        return clave != ClaveCotizacion.INVALIDA && ClaveCotizacion.dia(clave) < ClaveCotizacion.hoy();
+    }
+    
+    /**
+     * ETag fuerte: FNV-1a de 64 bits sobre el formato, los parámetros y los valores de cada
+     * cotización, que es todo lo que determina los bytes de la respuesta GET
+     */
+    static String calcularEtag(ResponseEncoder.Formato formato, JsonNode parametros, BcuSoapResponse[] registros) {
+        long hash = 0xcbf29ce484222325L;
+        hash = fnv(hash, formato.name());
+        hash = fnv(hash, parametros.toString());
+        for (BcuSoapResponse registro : registros) {
+            hash = fnv(hash, registro.getMoneda());
+            hash = fnv(hash, registro.getFecha());
+            hash = fnv(hash, Double.doubleToLongBits(registro.getCompra()));
+            hash = fnv(hash, Double.doubleToLongBits(registro.getVenta()));
+        }
+        return "\"" + Long.toHexString(hash) + "\"";
+    }
+    
+    private static long fnv(long hash, String texto) {
+        if (texto == null) {
+            return fnv(hash, 0L);
+        }
+        for (int i = 0; i < texto.length(); i++) {
+            hash = (hash ^ texto.charAt(i)) * 0x100000001b3L;
+        }
+        // Separador, para que ("ab","c") y ("a","bc") no coincidan
+        return (hash ^ 0xff) * 0x100000001b3L;
+    }
+    
+    private static long fnv(long hash, long valor) {
+        for (int i = 0; i < 8; i++) {
+            hash = (hash ^ (valor & 0xff)) * 0x100000001b3L;
+            valor >>>= 8;
+        }
+        return hash;
+    }
+    
+    /**
+     * Compara If-None-Match con el ETag actual: acepta listas, "*" y la forma débil W/
+     * (If-None-Match usa comparación débil)
+     */
+    static boolean coincideEtag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidato : ifNoneMatch.split(",")) {
+            candidato = candidato.trim();
+            if (candidato.startsWith("W/")) {
+                candidato = candidato.substring(2);
+            }
+            if (candidato.equals("*") || candidato.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private void handleError(HttpServletResponse response, Exception e, RequestTrace trace) throws IOException {
+        String codigo = "ERR_INTERNAL";
+        if (e instanceof BcuSobrecargaException) {
+            // Descartada por el limitador: el cliente puede reintentar en breve
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader("Retry-After", "1");
+            codigo = "ERR_SOBRECARGA";
+        } else {
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+        // Un error no debe reemplazar en caches la representación válida
+        response.setHeader("ETag", null);
+        response.setHeader("Cache-Control", "no-store");
         response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
         
         ObjectNode errorResponse = objectMapper.createObjectNode();
         errorResponse.put("status", "error");
         errorResponse.put("mensaje", e.getMessage());
-        errorResponse.put("codigo", "ERR_INTERNAL");
+        errorResponse.put("codigo", codigo);
         errorResponse.put("timestamp", System.currentTimeMillis());
+        errorResponse.put("requestId", trace.getId());
         
+        response.setHeader("Server-Timing", trace.serverTiming());
         PrintWriter writer = response.getWriter();
         writer.write(errorResponse.toString());
         writer.flush();
     }
     
+    /**
+     * GET /api/bcu/cotizacion?moneda=USD&fecha=2024-03-15 y
+     * GET /api/bcu/historico?moneda=USD&fechaInicio=...&fechaFin=...[&formato=columnar]
+     * se procesan como la consulta POST equivalente, con ETag y Cache-Control.
+     * Cualquier otra ruta devuelve la descripción del servicio.
+     */
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) 
             throws ServletException, IOException {
         
+        String ruta = request.getPathInfo();
+        if ("/cotizacion".equals(ruta) || "/historico".equals(ruta)) {
+            String tipoConsulta = ruta.substring(1);
+            String[] requeridos = "cotizacion".equals(tipoConsulta)
+                ? new String[] {"moneda", "fecha"}
+                : new String[] {"moneda", "fechaInicio", "fechaFin"};
+            ObjectNode consulta = objectMapper.createObjectNode();
+            consulta.put("tipoConsulta", tipoConsulta);
+            ObjectNode parametros = consulta.putObject("parametros");
+            for (String nombre : requeridos) {
+                String valor = request.getParameter(nombre);
+                if (valor == null || valor.trim().isEmpty()) {
+                    response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Parámetro '" + nombre + "' requerido");
+                    return;
+                }
+                parametros.put(nombre, nombre.equals("moneda") ? valor.trim().toUpperCase() : valor.trim());
+            }
+            if ("columnar".equals(request.getParameter("formato"))) {
+                parametros.put("formato", "columnar");
+            }
+            atender(request, response, consulta);
+            return;
+        }
+        
         response.setContentType("application/json");
         response.setStatus(HttpServletResponse.SC_OK);
         
@@ -240,19 +561,28 @@ public class BcuGatewayServlet extends HttpServlet {
         
         ArrayNode endpoints = info.putArray("endpoints");
         endpoints.add("POST /api/bcu/consulta - Realizar consulta al BCU");
+        endpoints.add("GET /api/bcu/cotizacion?moneda=&fecha= - Cotización con ETag/Cache-Control");
+        endpoints.add("GET /api/bcu/historico?moneda=&fechaInicio=&fechaFin= - Serie histórica con ETag/Cache-Control");
         
         PrintWriter writer = response.getWriter();
         writer.write(info.toString());
         writer.flush();
     }
     
+    @Override
+    public void destroy() {
+        priorityLanes.shutdown();
+        super.destroy();
+    }
+    
     @Override
     protected void doOptions(HttpServletRequest request, HttpServletResponse response) 
             throws ServletException, IOException {
         // Configurar headers CORS para preflight requests
         response.setHeader("Access-Control-Allow-Origin", "*");
         response.setHeader("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
-        response.setHeader("Access-Control-Allow-Headers", "Content-Type");
+        response.setHeader("Access-Control-Allow-Headers",
+            "Content-Type, X-Prioridad, X-Api-Key, X-Request-Id, If-None-Match");
         response.setStatus(HttpServletResponse.SC_OK);
     }
 }
@@ -0,0 +1,49 @@
+package com.enlamano.server;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Evento JFR de una consulta de BcuSoapClient, incluidas las resueltas por cache o por un peer.
+ * Se emite a través de {@link DiagnosticoJfr}.
+ */
+@Name("com.enlamano.BcuSoapCall")
+@Label("Consulta SOAP al BCU")
+@Category({"EnLaMano", "BCU"})
+@Description("Consulta de cotización o histórico al BCU, con el resultado de la cache")
+@StackTrace(false)
+public class BcuSoapCallEvent extends Event {
+
+    @Label("Request Id")
+    String requestId;
+
+    @Label("Operación")
+    String operacion;
+
+    @Label("Moneda")
+    String moneda;
+
+    @Label("Fecha")
+    String fecha;
+
+    @Label("Bytes de respuesta")
+    @DataAmount
+    long bytes;
+
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Reintentos")
+    int reintentos;
+
+    @Label("Resultado de cache")
+    String resultadoCache;
+
+    @Label("Éxito")
+    boolean exito;
+}
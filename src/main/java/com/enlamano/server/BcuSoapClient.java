@@ -1,14 +1,25 @@
 package com.enlamano.server;
 
-import org.apache.axis2.AxisFault;
 import org.apache.axis2.client.ServiceClient;
 import org.apache.axis2.client.Options;
 import org.apache.axis2.context.ConfigurationContext;
 import org.apache.axis2.context.ConfigurationContextFactory;
+import org.apache.axis2.kernel.http.HTTPConstants;
 import org.apache.axiom.om.OMElement;
 import org.apache.axiom.om.OMFactory;
 import org.apache.axiom.om.OMAbstractFactory;
 import org.apache.axiom.om.OMNamespace;
+import org.apache.axiom.om.OMXMLBuilderFactory;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.ssl.SSLContexts;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,13 +27,24 @@ import javax.xml.namespace.QName;
 import javax.net.ssl.*;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.StringReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.security.KeyStore;
 import java.security.cert.X509Certificate;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Cliente SOAP para comunicación con el Banco Central del Uruguay (BCU)
@@ -39,6 +61,13 @@ public class BcuSoapClient {
     private static final String SOAP_ACTION_COTIZACION = "http://tempuri.org/IArbitrajeServicio/ConsultarCotizacion";
     private static final String SOAP_ACTION_HISTORICO = "http://tempuri.org/IArbitrajeServicio/ConsultarHistorico";
     
+    // Respuesta de ejemplo para el precalentamiento del parseo (misma forma que la del BCU)
+    private static final String RESPUESTA_SINTETICA =
+        "<tns:ConsultarCotizacionResponse xmlns:tns=\"" + BCU_NAMESPACE + "\">"
+        + "<tns:ConsultarCotizacionResult><Moneda>USD</Moneda><Fecha>2024-01-15</Fecha>"
+        + "<TipoCambioCompra>39.125</TipoCambioCompra><TipoCambioVenta>39.875</TipoCambioVenta>"
+        + "</tns:ConsultarCotizacionResult></tns:ConsultarCotizacionResponse>";
+    
     // Configuración mTLS
     private static final String CLIENT_KEYSTORE_PATH = "certificates/client-keystore.p12";
     private static final String CLIENT_KEYSTORE_PASSWORD = "changeit";
@@ -46,12 +75,30 @@ public class BcuSoapClient {
     private static final String TRUSTSTORE_PASSWORD = "changeit";
     
     private final Properties config;
-    private ServiceClient serviceClient;
+    private final BcuConcurrencyLimiter limiter;
+    private final RateCache rateCache;
+    private final PeerRateReplicator peerReplicator;
+    // Consultas de cotización en curso por clave: las concurrentes a la misma esperan su resultado
+    private final ConcurrentHashMap<Long, FutureTask<BcuSoapResponse>> enCurso = new ConcurrentHashMap<>();
+    private UpstreamRouter upstreamRouter;
+    private PoolingHttpClientConnectionManager connectionManager;
     private boolean mtlsEnabled;
     
     public BcuSoapClient() {
-        this.config = loadConfiguration();
+        this(loadConfiguration());
+    }
+    
+    /**
+     * Cliente con una configuración dada en lugar de bcu-config.properties (pruebas y benchmarks)
+     */
+    public BcuSoapClient(Properties config) {
+        this.config = config;
         this.mtlsEnabled = Boolean.parseBoolean(config.getProperty("mtls.enabled", "false"));
+        this.limiter = new BcuConcurrencyLimiter(config);
+        Monedas.configurar(config);
+        ClaveCotizacion.configurar(config);
+        this.rateCache = new RateCache(config);
+        this.peerReplicator = PeerRateReplicator.crear(config);
         initializeServiceClient();
     }
     
@@ -59,16 +106,108 @@ public class BcuSoapClient {
      * Consulta cotización de una moneda en una fecha específica
      */
     public BcuSoapResponse consultarCotizacion(String moneda, String fecha) throws Exception {
-        logger.info("Consultando cotización: moneda={}, fecha={}", moneda, fecha);
+        return consultarCotizacion(ClaveCotizacion.clave(moneda, fecha), moneda, fecha);
+    }
+    
+    /**
+     * @param clave clave de (moneda, fecha) calculada al despachar la petición
+     */
+    public BcuSoapResponse consultarCotizacion(long clave, String moneda, String fecha) throws Exception {
+        RegistroConsulta evento = Diagnostico.get().consulta();
+        evento.iniciar();
+        try {
+            BcuSoapResponse cotizacion = obtenerCotizacion(clave, moneda, fecha, evento);
+            evento.exito = true;
+            return cotizacion;
+        } finally {
+            registrarEvento(evento, "cotizacion", moneda, fecha);
+        }
+    }
+    
+    private BcuSoapResponse obtenerCotizacion(final long clave, final String moneda, final String fecha,
+                                              final RegistroConsulta evento) throws Exception {
+        long inicioCache = System.nanoTime();
+        BcuSoapResponse cacheada = rateCache.get(clave);
+        RequestTrace.registrar(RequestTrace.Etapa.CACHE, inicioCache);
+        if (cacheada != null) {
+            logger.debug("[{}] Cotización en cache: moneda={}, fecha={}", RequestTrace.idActual(), moneda, fecha);
+            evento.resultadoCache = RegistroConsulta.CACHE_ACIERTO;
+            return cacheada;
+        }
+        if (clave == ClaveCotizacion.INVALIDA) {
+            return consultarSinCache(clave, moneda, fecha, evento);
+        }
+        
+        // Single-flight: la primera consulta de la clave va al peer o al BCU en este mismo hilo
+        FutureTask<BcuSoapResponse> tarea = new FutureTask<>(new Callable<BcuSoapResponse>() {
+            @Override
+            public BcuSoapResponse call() throws Exception {
+                return consultarSinCache(clave, moneda, fecha, evento);
+            }
+        });
+        FutureTask<BcuSoapResponse> existente = enCurso.putIfAbsent(clave, tarea);
+        if (existente != null) {
+            evento.resultadoCache = RegistroConsulta.CACHE_FALLO;
+            return resultado(existente);
+        }
+        try {
+            tarea.run();
+        } finally {
+            enCurso.remove(clave, tarea);
+        }
+        return resultado(tarea);
+    }
+    
+    private static BcuSoapResponse resultado(Future<BcuSoapResponse> tarea) throws Exception {
+        try {
+            return tarea.get();
+        } catch (ExecutionException e) {
+            Throwable causa = e.getCause();
+            if (causa instanceof Exception) {
+                throw (Exception) causa;
+            }
+            throw (Error) causa;
+        }
+    }
+    
+    private BcuSoapResponse consultarSinCache(long clave, String moneda, String fecha,
+                                              RegistroConsulta evento) throws Exception {
+        // En modo peer, preguntar al nodo propietario antes de ir al BCU
+        if (peerReplicator != null) {
+            long inicioPeer = System.nanoTime();
+            BcuSoapResponse remota = peerReplicator.consultarPropietario(clave, moneda, fecha);
+            RequestTrace.registrar(RequestTrace.Etapa.PEER, inicioPeer);
+            if (remota != null) {
+                evento.resultadoCache = RegistroConsulta.CACHE_PEER;
+                rateCache.put(clave, moneda, fecha, remota);
+                return remota;
+            }
+        }
+        evento.resultadoCache = RegistroConsulta.CACHE_FALLO;
+        
+        logger.info(RequestLogSamplingFilter.PETICION, "[{}] Consultando cotización: moneda={}, fecha={}",
+            RequestTrace.idActual(), moneda, fecha);
         
         try {
             OMElement request = buildCotizacionRequest(moneda, fecha);
-            OMElement response = serviceClient.sendReceive(request);
+            OMElement response = enviar(request, evento);
+            medirRespuesta(evento, response);
             
-            return parseCotizacionResponse(response);
+            long inicioParseo = System.nanoTime();
+            BcuSoapResponse cotizacion = parseCotizacionResponse(response);
+            RequestTrace.registrar(RequestTrace.Etapa.BCU_PARSE, inicioParseo);
+            
+            rateCache.put(clave, moneda, fecha, cotizacion);
+            if (peerReplicator != null) {
+                peerReplicator.anunciar(moneda, fecha, cotizacion);
+            }
+            return cotizacion;
             
+        } catch (BcuSobrecargaException e) {
+            logger.warn("[{}] Consulta de cotización descartada: {}", RequestTrace.idActual(), e.getMessage());
+            throw e;
         } catch (Exception e) {
-            logger.error("Error conectando con el BCU", e);
+            logger.error("[{}] Error conectando con el BCU", RequestTrace.idActual(), e);
             String errorMessage = buildErrorMessage(e);
             throw new Exception(errorMessage, e);
         }
@@ -78,46 +217,155 @@ public class BcuSoapClient {
      * Consulta datos históricos de una moneda en un rango de fechas
      */
     public BcuSoapResponse[] consultarHistorico(String moneda, String fechaInicio, String fechaFin) throws Exception {
-        logger.info("Consultando histórico: moneda={}, desde={}, hasta={}", moneda, fechaInicio, fechaFin);
+        return consultarHistorico(ClaveCotizacion.clave(moneda, fechaInicio), ClaveCotizacion.clave(moneda, fechaFin),
+            moneda, fechaInicio, fechaFin);
+    }
+    
+    /**
+     * @param desde clave de (moneda, fechaInicio) calculada al despachar la petición
+     * @param hasta clave de (moneda, fechaFin)
+     */
+    public BcuSoapResponse[] consultarHistorico(long desde, long hasta, String moneda, String fechaInicio,
+                                                String fechaFin) throws Exception {
+        if (desde != ClaveCotizacion.INVALIDA && hasta != ClaveCotizacion.INVALIDA
+                && ClaveCotizacion.dia(desde) > ClaveCotizacion.dia(hasta)) {
+            throw new IllegalArgumentException("fechaInicio posterior a fechaFin");
+        }
+        RegistroConsulta evento = Diagnostico.get().consulta();
+        evento.iniciar();
+        try {
+            BcuSoapResponse[] historicos = obtenerHistorico(desde, hasta, moneda, fechaInicio, fechaFin, evento);
+            evento.exito = true;
+            return historicos;
+        } finally {
+            registrarEvento(evento, "historico", moneda, fechaInicio + "/" + fechaFin);
+        }
+    }
+    
+    private BcuSoapResponse[] obtenerHistorico(long desde, long hasta, String moneda, String fechaInicio,
+                                               String fechaFin, RegistroConsulta evento) throws Exception {
+        logger.info(RequestLogSamplingFilter.PETICION, "[{}] Consultando histórico: moneda={}, desde={}, hasta={}",
+            RequestTrace.idActual(), moneda, fechaInicio, fechaFin);
         
         try {
             OMElement request = buildHistoricoRequest(moneda, fechaInicio, fechaFin);
-            OMElement response = serviceClient.sendReceive(request);
+            OMElement response = enviar(request, evento);
+            medirRespuesta(evento, response);
+            
+            long inicioParseo = System.nanoTime();
+            BcuSoapResponse[] historicos = parseHistoricoResponse(response);
+            RequestTrace.registrar(RequestTrace.Etapa.BCU_PARSE, inicioParseo);
             
-            return parseHistoricoResponse(response);
+            // Cada día del rango queda en cache para las consultas de cotización
+            if (desde != ClaveCotizacion.INVALIDA && hasta != ClaveCotizacion.INVALIDA) {
+                for (BcuSoapResponse historico : historicos) {
+                    long dia = ClaveCotizacion.diaEpoch(historico.getFecha());
+                    if (dia >= ClaveCotizacion.dia(desde) && dia <= ClaveCotizacion.dia(hasta)) {
+                        rateCache.put(ClaveCotizacion.clave(ClaveCotizacion.moneda(desde), dia),
+                            moneda, historico.getFecha(), historico);
+                    }
+                }
+            }
+            return historicos;
             
+        } catch (BcuSobrecargaException e) {
+            logger.warn("[{}] Consulta histórica descartada: {}", RequestTrace.idActual(), e.getMessage());
+            throw e;
         } catch (Exception e) {
-            logger.error("Error conectando con el BCU para consulta histórica", e);
+            logger.error("[{}] Error conectando con el BCU para consulta histórica", RequestTrace.idActual(), e);
             String errorMessage = buildErrorMessage(e);
             throw new Exception(errorMessage, e);
         }
     }
     
+    /**
+     * Completa y emite el evento JFR de la consulta (sin costo si no hay una grabación activa)
+     */
+    private void registrarEvento(RegistroConsulta evento, String operacion, String moneda, String fecha) {
+        if (evento.terminar()) {
+            evento.requestId = RequestTrace.idActual();
+            evento.operacion = operacion;
+            evento.moneda = moneda;
+            evento.fecha = fecha;
+            evento.emitir();
+        }
+    }
+    
+    private void medirRespuesta(RegistroConsulta evento, OMElement response) {
+        // Serializar la respuesta solo si el evento está habilitado en la grabación
+        if (evento.habilitado()) {
+            evento.bytes = response.toString().getBytes(StandardCharsets.UTF_8).length;
+        }
+    }
+    
+    /**
+     * Envía la petición SOAP al BCU a través del limitador de concurrencia, por el endpoint
+     * que elija el router
+     */
+    private OMElement enviar(final OMElement request, final RegistroConsulta evento) throws Exception {
+        return limiter.ejecutar(new Callable<OMElement>() {
+            @Override
+            public OMElement call() throws Exception {
+                long inicio = System.nanoTime();
+                try {
+                    return upstreamRouter.enviar(request, evento);
+                } finally {
+                    RequestTrace.registrar(RequestTrace.Etapa.BCU, inicio);
+                }
+            }
+        });
+    }
+    
+    public Properties getConfig() {
+        return config;
+    }
+    
+    public BcuConcurrencyLimiter getLimiter() {
+        return limiter;
+    }
+    
+    public RateCache getRateCache() {
+        return rateCache;
+    }
+    
+    public UpstreamRouter getUpstreamRouter() {
+        return upstreamRouter;
+    }
+    
+    /**
+     * Replicador entre instancias, o null si el modo peer no está configurado
+     */
+    public PeerRateReplicator getPeerReplicator() {
+        return peerReplicator;
+    }
+    
     private void initializeServiceClient() {
         try {
             ConfigurationContext context = ConfigurationContextFactory.createDefaultConfigurationContext();
-            serviceClient = new ServiceClient(context, null);
             
-            Options options = new Options();
-            options.setTo(new org.apache.axis2.addressing.EndpointReference(BCU_ENDPOINT_URL));
-            options.setTransportInProtocol("https");
-            
-            // Configurar timeouts
-            options.setTimeOutInMilliSeconds(30000); // 30 segundos
-            options.setProperty("SO_TIMEOUT", 30000);
-            options.setProperty("CONNECTION_TIMEOUT", 10000);
+            // Pool de conexiones propio (Axis2 lo toma del contexto) para poder abrirlas antes de la primera consulta
+            connectionManager = crearPoolConexiones(context);
+            context.setProperty(HTTPConstants.MULTITHREAD_HTTP_CONNECTION_MANAGER, connectionManager);
             
             // Configurar mTLS si está habilitado
             if (mtlsEnabled) {
-                configureMutualTLS(options);
+                configureMutualTLS();
             } else {
                 // Configurar SSL básico (solo para desarrollo)
-                configureBasicSSL(options);
+                configureBasicSSL();
             }
             
-            serviceClient.setOptions(options);
+            // Un ServiceClient por endpoint, todos sobre el mismo contexto y pool de conexiones
+            Map<String, ServiceClient> clientes = new LinkedHashMap<>();
+            for (String url : endpointUrls()) {
+                ServiceClient serviceClient = new ServiceClient(context, null);
+                serviceClient.setOptions(crearOpciones(url));
+                clientes.put(url, serviceClient);
+            }
+            upstreamRouter = new UpstreamRouter(config, clientes);
             
-            logger.info("Cliente SOAP inicializado correctamente. mTLS: {}", mtlsEnabled);
+            logger.info("Cliente SOAP inicializado correctamente. mTLS: {}, endpoints: {}",
+                mtlsEnabled, clientes.keySet());
             
         } catch (Exception e) {
             logger.error("Error inicializando cliente SOAP", e);
@@ -125,7 +373,118 @@ public class BcuSoapClient {
         }
     }
     
-    private void configureMutualTLS(Options options) throws Exception {
+    /**
+     * Endpoints en orden de preferencia: bcu.endpoints (lista separada por comas) o, si está
+     * vacía, bcu.endpoint. Las propiedades de sistema tienen prioridad sobre el archivo.
+     */
+    private List<String> endpointUrls() {
+        String lista = System.getProperty("bcu.endpoints", config.getProperty("bcu.endpoints", "")).trim();
+        if (lista.isEmpty()) {
+            lista = System.getProperty("bcu.endpoint", config.getProperty("bcu.endpoint", BCU_ENDPOINT_URL)).trim();
+        }
+        List<String> urls = new ArrayList<>();
+        for (String url : lista.split(",")) {
+            if (!url.trim().isEmpty() && !urls.contains(url.trim())) {
+                urls.add(url.trim());
+            }
+        }
+        if (urls.isEmpty()) {
+            urls.add(BCU_ENDPOINT_URL);
+        }
+        return urls;
+    }
+    
+    private Options crearOpciones(String url) throws IOException {
+        Options options = new Options();
+        options.setTo(new org.apache.axis2.addressing.EndpointReference(url));
+        options.setTransportInProtocol(new URL(url).getProtocol());
+        
+        // Configurar timeouts
+        options.setTimeOutInMilliSeconds(Long.parseLong(config.getProperty("socket.timeout", "30000")));
+        options.setProperty("SO_TIMEOUT", Integer.parseInt(config.getProperty("socket.timeout", "30000")));
+        options.setProperty("CONNECTION_TIMEOUT", Integer.parseInt(config.getProperty("connection.timeout", "10000")));
+        return options;
+    }
+    
+    /**
+     * Mismo pool que crearía el transporte HTTP de Axis2 en la primera consulta
+     */
+    private static PoolingHttpClientConnectionManager crearPoolConexiones(ConfigurationContext context) {
+        SSLContext sslContext = (SSLContext) context.getProperty(SSLContext.class.getName());
+        if (sslContext == null) {
+            sslContext = SSLContexts.createDefault();
+        }
+        PoolingHttpClientConnectionManager pool = new PoolingHttpClientConnectionManager(
+            RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", new SSLConnectionSocketFactory(sslContext))
+                .build());
+        pool.setMaxTotal(200);
+        pool.setDefaultMaxPerRoute(200);
+        return pool;
+    }
+    
+    /**
+     * Abre conexiones hacia cada endpoint y completa el handshake TLS, dejándolas en el pool para
+     * las primeras consultas. Devuelve la cantidad de conexiones abiertas.
+     */
+    public int precalentarConexiones(int cantidad) throws Exception {
+        int abiertas = 0;
+        for (UpstreamRouter.Endpoint endpoint : upstreamRouter.getEndpoints()) {
+            try {
+                abiertas += precalentarConexiones(endpoint.getUrl(), cantidad);
+            } catch (Exception e) {
+                logger.warn("No se pudo abrir conexión hacia {}: {}", endpoint.getUrl(), e.toString());
+            }
+        }
+        return abiertas;
+    }
+    
+    private int precalentarConexiones(String endpoint, int cantidad) throws Exception {
+        URL url = new URL(endpoint);
+        HttpHost host = new HttpHost(url.getHost(),
+            url.getPort() != -1 ? url.getPort() : url.getDefaultPort(), url.getProtocol());
+        HttpRoute ruta = new HttpRoute(host, null, "https".equals(url.getProtocol()));
+        int timeout = Integer.parseInt(config.getProperty("connection.timeout", "10000"));
+        
+        List<HttpClientConnection> abiertas = new ArrayList<>();
+        try {
+            for (int i = 0; i < cantidad; i++) {
+                HttpClientConnection conexion = connectionManager.requestConnection(ruta, null)
+                    .get(timeout, TimeUnit.MILLISECONDS);
+                abiertas.add(conexion);
+                if (!conexion.isOpen()) {
+                    HttpClientContext contexto = HttpClientContext.create();
+                    connectionManager.connect(conexion, ruta, timeout, contexto);
+                    connectionManager.routeComplete(conexion, ruta, contexto);
+                    // Vincula los buffers al socket: sin esto, la validación de una conexión
+                    // nunca usada falla con "Input stream is null"
+                    conexion.flush();
+                }
+            }
+        } finally {
+            for (HttpClientConnection conexion : abiertas) {
+                // Sin estado asociado: la reutiliza la primera consulta que pida esta ruta
+                connectionManager.releaseConnection(conexion, null, 60, TimeUnit.SECONDS);
+            }
+        }
+        return abiertas.size();
+    }
+    
+    /**
+     * Ejecuta el armado de la petición SOAP y el parseo de una respuesta sintética, para que
+     * las primeras consultas reales no paguen la carga de clases ni el código sin compilar
+     */
+    void precalentarParseo(int iteraciones) throws Exception {
+        for (int i = 0; i < iteraciones; i++) {
+            buildCotizacionRequest("USD", "2024-01-15").toString();
+            OMElement respuesta = OMXMLBuilderFactory.createOMBuilder(new StringReader(RESPUESTA_SINTETICA))
+                .getDocumentElement();
+            parseCotizacionResponse(respuesta);
+        }
+    }
+    
+    private void configureMutualTLS() throws Exception {
         logger.info("Configurando mTLS para comunicación con BCU");
         
         // Cargar keystore del cliente (certificado para autenticación)
@@ -162,7 +521,7 @@ public class BcuSoapClient {
         logger.info("mTLS configurado correctamente");
     }
     
-    private void configureBasicSSL(Options options) {
+    private void configureBasicSSL() {
         logger.warn("Configurando SSL básico - SOLO PARA DESARROLLO");
         
         // Para desarrollo: aceptar todos los certificados (NO USAR EN PRODUCCIÓN)
@@ -251,8 +610,8 @@ public class BcuSoapClient {
                 
                 bcuResponse.setFechaConsulta(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()));
                 
-                logger.info("Cotización parseada exitosamente: {} = {} / {}", 
-                    bcuResponse.getMoneda(), bcuResponse.getCompra(), bcuResponse.getVenta());
+                logger.info(RequestLogSamplingFilter.PETICION, "[{}] Cotización parseada exitosamente: {} = {} / {}",
+                    RequestTrace.idActual(), bcuResponse.getMoneda(), bcuResponse.getCompra(), bcuResponse.getVenta());
                 
             } else {
                 String errorMsg = "No se encontró resultado válido en la respuesta del BCU";
@@ -310,7 +669,7 @@ public class BcuSoapClient {
         }
     }
     
-    private Properties loadConfiguration() {
+    private static Properties loadConfiguration() {
         Properties props = new Properties();
         try (FileInputStream configFile = new FileInputStream("src/main/resources/bcu-config.properties")) {
             props.load(configFile);
@@ -326,12 +685,14 @@ public class BcuSoapClient {
     }
     
     public void close() {
-        try {
-            if (serviceClient != null) {
-                serviceClient.cleanup();
-            }
-        } catch (AxisFault e) {
-            logger.error("Error cerrando cliente SOAP", e);
+        if (peerReplicator != null) {
+            peerReplicator.close();
+        }
+        if (upstreamRouter != null) {
+            upstreamRouter.close();
+        }
+        if (connectionManager != null) {
+            connectionManager.shutdown();
         }
     }
 }
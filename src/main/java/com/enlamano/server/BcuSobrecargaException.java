@@ -0,0 +1,11 @@
+package com.enlamano.server;
+
+/**
+ * Excepción lanzada cuando una llamada al BCU se descarta para no sobrecargar el servicio
+ */
+public class BcuSobrecargaException extends Exception {
+
+    public BcuSobrecargaException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,150 @@
+package com.enlamano.server;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Properties;
+
+/**
+ * Clave canónica de una cotización empaquetada en un long: número de {@link Monedas moneda}
+ * en los 42 bits altos y día (desde 0000-01-01, para cubrir los años 0 a 9999) en los 22 bajos.
+ * "2024-01-05" y "05/01/2024", o "USD" y su alias "2225", producen la misma clave.
+ */
+public final class ClaveCotizacion {
+
+    /** Moneda o fecha no reconocida: la consulta no usa cache */
+    public static final long INVALIDA = 0L;
+
+    /** Resultado de {@link #diaEpoch} para fechas en otro formato o inexistentes */
+    public static final long SIN_FECHA = Long.MIN_VALUE;
+
+    // Días entre 0000-01-01 y 1970-01-01 (como en LocalDate.toEpochDay)
+    private static final long DIAS_0000_A_1970 = 719528L;
+
+    private static final int BITS_DIA = 64 - Monedas.BITS;
+    private static final long MASCARA_DIA = (1L << BITS_DIA) - 1;
+
+    // Zona en que se publican las cotizaciones: define qué día es "hoy"
+    private static volatile ZoneId zona = ZoneId.of("America/Montevideo");
+
+    private ClaveCotizacion() {
+    }
+
+    /**
+     * Lee {@code bcu.zona} (por defecto America/Montevideo). Se llama al arrancar.
+     */
+    public static void configurar(Properties config) {
+        String id = System.getProperty("bcu.zona", config.getProperty("bcu.zona", "America/Montevideo")).trim();
+        try {
+            zona = ZoneId.of(id);
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("bcu.zona inválida: " + id, e);
+        }
+    }
+
+    /**
+     * Día epoch actual en la zona del BCU: las cotizaciones de días anteriores ya no cambian
+     */
+    public static long hoy() {
+        return LocalDate.now(zona).toEpochDay();
+    }
+
+    public static long clave(CharSequence moneda, CharSequence fecha) {
+        long id = Monedas.id(moneda);
+        long dia = diaEpoch(fecha);
+        if (id == Monedas.DESCONOCIDA || dia == SIN_FECHA) {
+            return INVALIDA;
+        }
+        return clave(id, dia);
+    }
+
+    /**
+     * @param dia día epoch de una fecha de los años 0 a 9999, como los que devuelve {@link #diaEpoch}
+     */
+    public static long clave(long moneda, long dia) {
+        return (moneda << BITS_DIA) | (dia + DIAS_0000_A_1970);
+    }
+
+    public static long moneda(long clave) {
+        return clave >>> BITS_DIA;
+    }
+
+    public static long dia(long clave) {
+        return (clave & MASCARA_DIA) - DIAS_0000_A_1970;
+    }
+
+    /**
+     * Hash de la clave para repartir cotizaciones entre nodos; el número de moneda es el
+     * mismo en todos ellos
+     */
+    public static long hashEntreNodos(long clave) {
+        long h = clave;
+        // Mezcla final de SplitMix64
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+
+    /**
+     * Día epoch de una fecha "yyyy-MM-dd" o "dd/MM/yyyy", sin crear objetos, o {@link #SIN_FECHA}
+     */
+    public static long diaEpoch(CharSequence fecha) {
+        if (fecha == null || fecha.length() != 10) {
+            return SIN_FECHA;
+        }
+        int anio;
+        int mes;
+        int dia;
+        if (fecha.charAt(4) == '-' && fecha.charAt(7) == '-') {
+            anio = digitos(fecha, 0, 4);
+            mes = digitos(fecha, 5, 7);
+            dia = digitos(fecha, 8, 10);
+        } else if (fecha.charAt(2) == '/' && fecha.charAt(5) == '/') {
+            dia = digitos(fecha, 0, 2);
+            mes = digitos(fecha, 3, 5);
+            anio = digitos(fecha, 6, 10);
+        } else {
+            return SIN_FECHA;
+        }
+        if (anio < 0 || mes < 1 || mes > 12 || dia < 1 || dia > diasDelMes(anio, mes)) {
+            return SIN_FECHA;
+        }
+        long total = 365L * anio + (anio + 3) / 4 - (anio + 99) / 100 + (anio + 399) / 400;
+        total += (367 * mes - 362) / 12;
+        total += dia - 1;
+        if (mes > 2) {
+            total -= bisiesto(anio) ? 1 : 2;
+        }
+        return total - DIAS_0000_A_1970;
+    }
+
+    private static int digitos(CharSequence texto, int desde, int hasta) {
+        int valor = 0;
+        for (int i = desde; i < hasta; i++) {
+            char c = texto.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            valor = valor * 10 + (c - '0');
+        }
+        return valor;
+    }
+
+    private static int diasDelMes(int anio, int mes) {
+        switch (mes) {
+            case 2:
+                return bisiesto(anio) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static boolean bisiesto(int anio) {
+        return (anio & 3) == 0 && (anio % 100 != 0 || anio % 400 == 0);
+    }
+}
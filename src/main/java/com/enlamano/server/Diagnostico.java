@@ -0,0 +1,59 @@
+package com.enlamano.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpServlet;
+import java.util.Properties;
+
+/**
+ * Registros de diagnóstico del gateway. Si la JVM incluye JDK Flight Recorder (JDK 11+ u 8u262+)
+ * se usa {@code DiagnosticoJfr}, que emite eventos JFR; si no, esta implementación, que no
+ * registra nada. La elección se hace una sola vez al cargar la clase y por reflexión, de modo que
+ * ninguna clase del camino de las peticiones depende de {@code jdk.jfr}.
+ */
+public class Diagnostico {
+
+    private static final Logger logger = LoggerFactory.getLogger(Diagnostico.class);
+
+    private static final Diagnostico INSTANCIA = cargar();
+
+    protected Diagnostico() {
+    }
+
+    public static Diagnostico get() {
+        return INSTANCIA;
+    }
+
+    /**
+     * Registro de una consulta de BcuSoapClient
+     */
+    public RegistroConsulta consulta() {
+        return new RegistroConsulta();
+    }
+
+    /**
+     * Registro de una petición procesada por BcuGatewayServlet
+     */
+    public RegistroPeticion peticion() {
+        return new RegistroPeticion();
+    }
+
+    /**
+     * Endpoint de administración de grabaciones, o null si no está disponible
+     */
+    public HttpServlet adminServlet(Properties config) {
+        logger.info("Administración JFR deshabilitada: la JVM no incluye JDK Flight Recorder");
+        return null;
+    }
+
+    private static Diagnostico cargar() {
+        try {
+            Class.forName("jdk.jfr.FlightRecorder");
+            return (Diagnostico) Class.forName("com.enlamano.server.DiagnosticoJfr").newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            logger.info("JDK Flight Recorder no disponible ({}): eventos de diagnóstico deshabilitados", e.toString());
+            return new Diagnostico();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.enlamano.server;
+
+import javax.servlet.http.HttpServlet;
+import java.util.Properties;
+
+/**
+ * Registros de diagnóstico como eventos JFR. Solo se carga, por reflexión desde
+ * {@link Diagnostico}, si la JVM incluye JDK Flight Recorder; el build con
+ * {@code maven.compiler.release=8} la excluye junto con los eventos y {@link JfrAdminServlet}.
+ */
+public class DiagnosticoJfr extends Diagnostico {
+
+    @Override
+    public RegistroConsulta consulta() {
+        return new ConsultaJfr();
+    }
+
+    @Override
+    public RegistroPeticion peticion() {
+        return new PeticionJfr();
+    }
+
+    @Override
+    public HttpServlet adminServlet(Properties config) {
+        return JfrAdminServlet.crear(config);
+    }
+
+    static class ConsultaJfr extends RegistroConsulta {
+
+        private final BcuSoapCallEvent evento = new BcuSoapCallEvent();
+
+        @Override
+        public void iniciar() {
+            evento.begin();
+        }
+
+        @Override
+        public boolean habilitado() {
+            return evento.isEnabled();
+        }
+
+        @Override
+        public boolean terminar() {
+            evento.end();
+            return evento.shouldCommit();
+        }
+
+        @Override
+        public void emitir() {
+            evento.requestId = requestId;
+            evento.operacion = operacion;
+            evento.moneda = moneda;
+            evento.fecha = fecha;
+            evento.bytes = bytes;
+            evento.endpoint = endpoint;
+            evento.reintentos = reintentos;
+            evento.resultadoCache = resultadoCache;
+            evento.exito = exito;
+            evento.commit();
+        }
+    }
+
+    static class PeticionJfr extends RegistroPeticion {
+
+        private final GatewayRequestEvent evento = new GatewayRequestEvent();
+
+        @Override
+        public void iniciar() {
+            evento.begin();
+        }
+
+        @Override
+        public boolean terminar() {
+            evento.end();
+            return evento.shouldCommit();
+        }
+
+        @Override
+        public void emitir() {
+            evento.requestId = requestId;
+            evento.tipoConsulta = tipoConsulta;
+            evento.prioridad = prioridad;
+            evento.moneda = moneda;
+            evento.fecha = fecha;
+            evento.status = status;
+            evento.bytes = bytes;
+            evento.commit();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.enlamano.server;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.LoggerFactory;
+import org.slf4j.Marker;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limita los errores y advertencias repetidos (por ejemplo, durante una caída del BCU).
+ * Los eventos se agrupan por logger, mensaje y tipo de excepción: en cada ventana se
+ * emiten los primeros {@code maxPerWindow} y el resto se suprime. Cuántos se descartaron
+ * se informa al vencer la ventana (aunque no vuelva a ocurrir el evento) y, con lo
+ * pendiente, al detenerse el {@link AsyncBatchAppender}.
+ */
+public class ErrorRateLimitFilter extends TurboFilter {
+
+    private static final String LOGGER_RESUMEN = ErrorRateLimitFilter.class.getName();
+    private static final int MAX_CLAVES = 1000;
+
+    private long windowMillis = 10000;
+    private int maxPerWindow = 5;
+    private String exclude;
+
+    private final Map<String, Ventana> ventanas = new ConcurrentHashMap<>();
+    private ScheduledExecutorService barrido;
+
+    @Override
+    public void start() {
+        barrido = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "log-error-summary");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        barrido.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                barrer();
+            }
+        }, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+        super.start();
+    }
+
+    @Override
+    public void stop() {
+        if (barrido != null) {
+            barrido.shutdownNow();
+        }
+        super.stop();
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        if (level == null || !level.isGreaterOrEqual(Level.WARN) || format == null
+                || LOGGER_RESUMEN.equals(logger.getName())
+                || (exclude != null && logger.getName().startsWith(exclude))) {
+            return FilterReply.NEUTRAL;
+        }
+        if (!logger.isEnabledFor(level)) {
+            return FilterReply.NEUTRAL;
+        }
+
+        // logger.error(formato, arg, e) llega con t == null y la excepción como último parámetro
+        if (t == null && params != null && params.length > 0 && params[params.length - 1] instanceof Throwable) {
+            t = (Throwable) params[params.length - 1];
+        }
+        String clave = logger.getName() + '|' + format + '|' + (t != null ? t.getClass().getName() : "");
+        Ventana ventana = ventanas.get(clave);
+        if (ventana == null) {
+            if (ventanas.size() >= MAX_CLAVES) {
+                vaciar();
+                ventanas.clear();
+            }
+            Ventana nueva = new Ventana(logger.getName(), format);
+            ventana = ventanas.putIfAbsent(clave, nueva);
+            if (ventana == null) {
+                ventana = nueva;
+            }
+        }
+
+        long ahora = System.nanoTime();
+        resumir(ventana, ventana.renovarSiVencida(ahora, TimeUnit.MILLISECONDS.toNanos(windowMillis)));
+        return ventana.emitidos.incrementAndGet() <= maxPerWindow ? FilterReply.NEUTRAL : contarSuprimido(ventana);
+    }
+
+    /**
+     * Informa los suprimidos de las ventanas vencidas en las que el evento no volvió a ocurrir
+     */
+    void barrer() {
+        long ahora = System.nanoTime();
+        long duracion = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        for (Ventana ventana : ventanas.values()) {
+            resumir(ventana, ventana.renovarSiVencida(ahora, duracion));
+        }
+    }
+
+    /**
+     * Informa todos los suprimidos pendientes, sin esperar a que venzan sus ventanas
+     */
+    public void vaciar() {
+        for (Ventana ventana : ventanas.values()) {
+            resumir(ventana, ventana.suprimidos.getAndSet(0));
+        }
+    }
+
+    private void resumir(Ventana ventana, long suprimidos) {
+        if (suprimidos > 0) {
+            org.slf4j.Logger resumen = getContext() instanceof LoggerContext
+                ? ((LoggerContext) getContext()).getLogger(LOGGER_RESUMEN) : LoggerFactory.getLogger(LOGGER_RESUMEN);
+            resumen.warn("{} eventos repetidos suprimidos en {}: {}",
+                suprimidos, ventana.logger, ventana.formato);
+        }
+    }
+
+    private static FilterReply contarSuprimido(Ventana ventana) {
+        ventana.suprimidos.incrementAndGet();
+        return FilterReply.DENY;
+    }
+
+    public void setWindowMillis(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    public void setMaxPerWindow(int maxPerWindow) {
+        this.maxPerWindow = maxPerWindow;
+    }
+
+    /**
+     * Prefijo de loggers que no se limitan (por ejemplo, el log de peticiones lentas, que ya se muestrea)
+     */
+    public void setExclude(String exclude) {
+        this.exclude = exclude == null || exclude.isEmpty() ? null : exclude;
+    }
+
+    private static final class Ventana {
+        private final String logger;
+        private final String formato;
+        private final AtomicLong inicioNanos = new AtomicLong(System.nanoTime());
+        private final AtomicLong emitidos = new AtomicLong();
+        private final AtomicLong suprimidos = new AtomicLong();
+
+        Ventana(String logger, String formato) {
+            this.logger = logger;
+            this.formato = formato;
+        }
+
+        /**
+         * Abre una nueva ventana si la actual venció; devuelve los suprimidos de la ventana anterior
+         */
+        long renovarSiVencida(long ahora, long duracionNanos) {
+            long inicio = inicioNanos.get();
+            if (ahora - inicio < duracionNanos || !inicioNanos.compareAndSet(inicio, ahora)) {
+                return 0;
+            }
+            emitidos.set(0);
+            return suprimidos.getAndSet(0);
+        }
+    }
+}
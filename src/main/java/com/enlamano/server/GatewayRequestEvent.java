@@ -0,0 +1,42 @@
+package com.enlamano.server;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Evento JFR de una petición procesada por BcuGatewayServlet. Se emite a través de {@link DiagnosticoJfr}.
+ */
+@Name("com.enlamano.GatewayRequest")
+@Label("Petición al gateway")
+@Category({"EnLaMano", "Gateway"})
+@Description("Petición de NetSuite procesada en un carril de prioridad")
+@StackTrace(false)
+public class GatewayRequestEvent extends Event {
+
+    @Label("Request Id")
+    String requestId;
+
+    @Label("Tipo de consulta")
+    String tipoConsulta;
+
+    @Label("Prioridad")
+    String prioridad;
+
+    @Label("Moneda")
+    String moneda;
+
+    @Label("Fecha")
+    String fecha;
+
+    @Label("Estado HTTP")
+    int status;
+
+    @Label("Bytes de respuesta")
+    @DataAmount
+    long bytes;
+}
@@ -1,6 +1,7 @@
 package com.enlamano.server;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,6 +15,7 @@ import java.io.PrintWriter;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
 import java.lang.management.RuntimeMXBean;
+import java.util.Map;
 
 /**
  * Servlet para verificar el estado del servidor
@@ -21,7 +23,30 @@ import java.lang.management.RuntimeMXBean;
 public class HealthCheckServlet extends HttpServlet {
     
     private static final Logger logger = LoggerFactory.getLogger(HealthCheckServlet.class);
+    
+    /** Ruta de readiness; /api/health sigue siendo el chequeo de vida */
+    public static final String RUTA_READY = "/api/ready";
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private final BcuSoapClient bcuSoapClient;
+    private final PriorityLanes priorityLanes;
+    private final RatePublisher ratePublisher;
+    private final StartupWarmup startupWarmup;
+    
+    public HealthCheckServlet() {
+        this(null, null, null);
+    }
+    
+    public HealthCheckServlet(BcuSoapClient bcuSoapClient, PriorityLanes priorityLanes, RatePublisher ratePublisher) {
+        this(bcuSoapClient, priorityLanes, ratePublisher, null);
+    }
+    
+    public HealthCheckServlet(BcuSoapClient bcuSoapClient, PriorityLanes priorityLanes, RatePublisher ratePublisher,
+                              StartupWarmup startupWarmup) {
+        this.bcuSoapClient = bcuSoapClient;
+        this.priorityLanes = priorityLanes;
+        this.ratePublisher = ratePublisher;
+        this.startupWarmup = startupWarmup;
+    }
     
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) 
@@ -36,6 +61,17 @@ public class HealthCheckServlet extends HttpServlet {
         response.setCharacterEncoding("UTF-8");
         
         try {
+            if (RUTA_READY.equals(request.getServletPath())) {
+                // Readiness: 503 hasta terminar el precalentamiento de arranque
+                ObjectNode ready = createReadyStatus();
+                boolean listo = startupWarmup == null || startupWarmup.isListo();
+                response.setStatus(listo ? HttpServletResponse.SC_OK : HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                PrintWriter writer = response.getWriter();
+                writer.write(ready.toString());
+                writer.flush();
+                return;
+            }
+            
             ObjectNode healthStatus = createHealthStatus();
             
             response.setStatus(HttpServletResponse.SC_OK);
@@ -57,6 +93,34 @@ public class HealthCheckServlet extends HttpServlet {
         }
     }
     
+    private ObjectNode createReadyStatus() {
+        ObjectNode ready = objectMapper.createObjectNode();
+        if (startupWarmup == null || startupWarmup.isListo()) {
+            ready.put("status", "LISTO");
+        } else {
+            ready.put("status", "CALENTANDO");
+        }
+        if (startupWarmup != null) {
+            agregarArranque(ready);
+        }
+        return ready;
+    }
+    
+    private void agregarArranque(ObjectNode destino) {
+        ObjectNode arranque = destino.putObject("arranque");
+        arranque.put("listo", startupWarmup.isListo());
+        arranque.put("msHastaListo", startupWarmup.getMsHastaListo());
+        arranque.put("msDesdeInicioJvm", startupWarmup.getMsDesdeInicioJvm());
+        ObjectNode etapas = arranque.putObject("etapasMs");
+        for (Map.Entry<String, Long> etapa : startupWarmup.getEtapas().entrySet()) {
+            etapas.put(etapa.getKey(), etapa.getValue());
+        }
+        ArrayNode fallidas = arranque.putArray("etapasFallidas");
+        for (String etapa : startupWarmup.getFallidas()) {
+            fallidas.add(etapa);
+        }
+    }
+    
     private ObjectNode createHealthStatus() {
         ObjectNode health = objectMapper.createObjectNode();
         
@@ -74,6 +138,9 @@ public class HealthCheckServlet extends HttpServlet {
         sistema.put("javaVendor", System.getProperty("java.vendor"));
         sistema.put("osName", System.getProperty("os.name"));
         sistema.put("osVersion", System.getProperty("os.version"));
+        if (startupWarmup != null) {
+            agregarArranque(health);
+        }
         
         // Información de memoria
         MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
@@ -94,11 +161,84 @@ public class HealthCheckServlet extends HttpServlet {
         ObjectNode conexiones = health.putObject("conexiones");
         conexiones.put("mtlsHabilitado", isMtlsEnabled());
         conexiones.put("certificadosConfigurados", verificarCertificados());
+        if (ratePublisher != null) {
+            conexiones.put("suscriptoresSse", ratePublisher.getSuscriptores());
+        }
+        
+        // Estado del limitador de concurrencia hacia el BCU
+        if (bcuSoapClient != null) {
+            BcuConcurrencyLimiter limiter = bcuSoapClient.getLimiter();
+            ObjectNode limitador = health.putObject("limitadorBcu");
+            limitador.put("limite", limiter.getLimite());
+            limitador.put("enVuelo", limiter.getEnVuelo());
+            limitador.put("enCola", limiter.getEnCola());
+            limitador.put("rttMinimoMs", limiter.getRttMinimoMillis());
+            limitador.put("completadas", limiter.getCompletadas());
+            limitador.put("rechazadas", limiter.getRechazadas());
+            limitador.put("caidas", limiter.getCaidas());
+        }
+        
+        // Endpoints SOAP: latencia y tasa de error suavizadas, y expulsiones
+        if (bcuSoapClient != null) {
+            ArrayNode upstream = health.putArray("endpointsBcu");
+            for (UpstreamRouter.Endpoint endpoint : bcuSoapClient.getUpstreamRouter().getEndpoints()) {
+                ObjectNode estado = upstream.addObject();
+                estado.put("url", endpoint.getUrl());
+                estado.put("latenciaEwmaMs", endpoint.getLatenciaEwmaMillis());
+                estado.put("tasaErrorEwma", endpoint.getErrorEwma());
+                estado.put("expulsado", endpoint.isExpulsado());
+                estado.put("solicitudes", endpoint.getSolicitudes());
+                estado.put("fallos", endpoint.getFallos());
+            }
+        }
+        
+        // Cache de cotizaciones y replicación entre instancias
+        if (bcuSoapClient != null) {
+            RateCache rateCache = bcuSoapClient.getRateCache();
+            ObjectNode cache = health.putObject("cache");
+            cache.put("entradas", rateCache.size());
+            cache.put("aciertos", rateCache.getAciertos());
+            cache.put("fallos", rateCache.getFallos());
+            
+            PeerRateReplicator replicator = bcuSoapClient.getPeerReplicator();
+            if (replicator != null) {
+                ObjectNode peers = cache.putObject("peers");
+                peers.put("nodoLocal", replicator.getNodoLocal());
+                peers.put("nodos", replicator.getNodos().size());
+                peers.put("aciertosRemotos", replicator.getAciertosRemotos());
+                peers.put("fallosRemotos", replicator.getFallosRemotos());
+                peers.put("omitidas", replicator.getOmitidas());
+                ArrayNode evitados = peers.putArray("evitados");
+                for (String nodo : replicator.getNodosEvitados()) {
+                    evitados.add(nodo);
+                }
+                peers.put("anunciosEnviados", replicator.getAnunciosEnviados());
+                peers.put("anunciosRecibidos", replicator.getAnunciosRecibidos());
+            }
+        }
+        
+        // Latencia y ocupación por clase de prioridad
+        if (priorityLanes != null) {
+            ObjectNode carriles = health.putObject("carriles");
+            for (PriorityLanes.Carril carril : priorityLanes.getCarriles()) {
+                ObjectNode estado = carriles.putObject(carril.getClase().getNombre());
+                estado.put("hilosActivos", carril.getHilosActivos());
+                estado.put("enCola", carril.getEnCola());
+                estado.put("completadas", carril.getCompletadas());
+                estado.put("rechazadas", carril.getRechazadas());
+                estado.put("latenciaPromedioMs", carril.getLatenciaPromedioMillis());
+                estado.put("latenciaMaximaMs", carril.getLatenciaMaximaMillis());
+                estado.put("esperaPromedioMs", carril.getEsperaPromedioMillis());
+            }
+        }
         
         return health;
     }
     
     private String verificarBcuClient() {
+        if (bcuSoapClient != null) {
+            return "OK";
+        }
         try {
             // Verificar que el cliente SOAP puede inicializarse
             BcuSoapClient client = new BcuSoapClient();
@@ -0,0 +1,237 @@
+package com.enlamano.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Properties;
+
+/**
+ * Endpoint de administración para grabaciones de JDK Flight Recorder.
+ * <ul>
+ *   <li>POST /admin/jfr/start?profile=default|profile|archivo.jfc&amp;maxAge=600&amp;maxSize=104857600</li>
+ *   <li>POST /admin/jfr/stop</li>
+ *   <li>GET  /admin/jfr/download (si la grabación sigue activa descarga una instantánea)</li>
+ *   <li>GET  /admin/jfr/status</li>
+ * </ul>
+ * Todas las acciones exigen el header X-Admin-Token. Los archivos .jfc solo se cargan desde
+ * {@code admin.jfr.profiles.dir}.
+ */
+public class JfrAdminServlet extends HttpServlet {
+
+    private static final Logger logger = LoggerFactory.getLogger(JfrAdminServlet.class);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final byte[] token;
+    private final Path directorioPerfiles;
+    private Recording recording;
+
+    JfrAdminServlet(String token, Path directorioPerfiles) {
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+        this.directorioPerfiles = directorioPerfiles;
+    }
+
+    /**
+     * Crea el servlet si se configuró {@code admin.token}, o null en caso contrario: sin token
+     * las grabaciones JFR no se exponen. Las propiedades de sistema tienen precedencia sobre
+     * bcu-config.properties.
+     */
+    public static JfrAdminServlet crear(Properties config) {
+        String token = propiedad(config, "admin.token").trim();
+        if (token.isEmpty()) {
+            logger.info("Administración JFR deshabilitada: falta admin.token");
+            return null;
+        }
+        String directorio = propiedad(config, "admin.jfr.profiles.dir").trim();
+        Path perfiles = directorio.isEmpty() ? null : Paths.get(directorio).toAbsolutePath().normalize();
+        return new JfrAdminServlet(token, perfiles);
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
+        if (!autorizado(request, response)) {
+            return;
+        }
+
+        String accion = accion(request);
+        try {
+            if ("start".equals(accion)) {
+                iniciar(request, response);
+            } else if ("stop".equals(accion)) {
+                detener(response);
+            } else {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            }
+        } catch (Exception e) {
+            logger.error("Error en acción JFR '{}'", accion, e);
+            responder(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "ERROR", e.getMessage());
+        }
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
+        if (!autorizado(request, response)) {
+            return;
+        }
+
+        String accion = accion(request);
+        if ("download".equals(accion)) {
+            descargar(response);
+        } else if ("status".equals(accion)) {
+            Recording actual = getRecording();
+            responder(response, HttpServletResponse.SC_OK,
+                actual != null ? actual.getState().name() : "SIN_GRABACION", null);
+        } else {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+        }
+    }
+
+    private synchronized void iniciar(HttpServletRequest request, HttpServletResponse response) throws Exception {
+        if (recording != null && recording.getState() == RecordingState.RUNNING) {
+            responder(response, HttpServletResponse.SC_CONFLICT, "RUNNING", "Ya hay una grabación en curso");
+            return;
+        }
+        if (recording != null) {
+            recording.close();
+        }
+
+        String perfil = parametro(request, "profile", "profile");
+        Configuration configuracion = configuracion(perfil);
+        if (configuracion == null) {
+            responder(response, HttpServletResponse.SC_BAD_REQUEST, "ERROR", "Perfil no permitido: " + perfil);
+            return;
+        }
+
+        recording = new Recording(configuracion);
+        recording.setName("enlamano-" + System.currentTimeMillis());
+        recording.setToDisk(true);
+        recording.setMaxAge(Duration.ofSeconds(Long.parseLong(parametro(request, "maxAge", "600"))));
+        recording.setMaxSize(Long.parseLong(parametro(request, "maxSize", String.valueOf(100L * 1024 * 1024))));
+        recording.start();
+
+        logger.info("Grabación JFR iniciada con perfil '{}'", perfil);
+        responder(response, HttpServletResponse.SC_OK, "RUNNING", "Grabación iniciada con perfil " + perfil);
+    }
+
+    private synchronized void detener(HttpServletResponse response) throws IOException {
+        if (recording == null || recording.getState() != RecordingState.RUNNING) {
+            responder(response, HttpServletResponse.SC_CONFLICT, "SIN_GRABACION", "No hay una grabación en curso");
+            return;
+        }
+        recording.stop();
+        logger.info("Grabación JFR detenida");
+        responder(response, HttpServletResponse.SC_OK, "STOPPED", "Grabación detenida, disponible en /admin/jfr/download");
+    }
+
+    private void descargar(HttpServletResponse response) throws IOException {
+        Recording actual = getRecording();
+        if (actual == null || actual.getState() == RecordingState.NEW || actual.getState() == RecordingState.CLOSED) {
+            responder(response, HttpServletResponse.SC_NOT_FOUND, "SIN_GRABACION", "No hay grabación para descargar");
+            return;
+        }
+
+        Path archivo = Files.createTempFile("enlamano-", ".jfr");
+        try {
+            actual.dump(archivo);
+            response.setStatus(HttpServletResponse.SC_OK);
+            response.setContentType("application/octet-stream");
+            response.setHeader("Content-Disposition", "attachment; filename=\"" + actual.getName() + ".jfr\"");
+            response.setContentLengthLong(Files.size(archivo));
+            Files.copy(archivo, response.getOutputStream());
+        } finally {
+            Files.deleteIfExists(archivo);
+        }
+    }
+
+    /**
+     * Perfil incorporado ("default" o "profile") o archivo .jfc del directorio de perfiles
+     * configurado, sin rutas; null si no está permitido
+     */
+    Configuration configuracion(String perfil) throws Exception {
+        if ("default".equals(perfil) || "profile".equals(perfil)) {
+            return Configuration.getConfiguration(perfil);
+        }
+        if (directorioPerfiles == null || !perfil.matches("[A-Za-z0-9_.-]+\\.jfc")) {
+            return null;
+        }
+        Path archivo = directorioPerfiles.resolve(perfil).normalize();
+        if (!archivo.getParent().equals(directorioPerfiles) || !Files.isRegularFile(archivo)) {
+            return null;
+        }
+        return Configuration.create(archivo);
+    }
+
+    private synchronized Recording getRecording() {
+        return recording;
+    }
+
+    private boolean autorizado(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String recibido = request.getHeader("X-Admin-Token");
+        boolean permitido = recibido != null
+            && MessageDigest.isEqual(token, recibido.getBytes(StandardCharsets.UTF_8));
+        if (!permitido) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+        }
+        return permitido;
+    }
+
+    private static String accion(HttpServletRequest request) {
+        String path = request.getPathInfo();
+        return path == null ? "" : path.replace("/", "");
+    }
+
+    private static String propiedad(Properties config, String nombre) {
+        return System.getProperty(nombre, config.getProperty(nombre, ""));
+    }
+
+    private static String parametro(HttpServletRequest request, String nombre, String porDefecto) {
+        String valor = request.getParameter(nombre);
+        return valor != null && !valor.trim().isEmpty() ? valor.trim() : porDefecto;
+    }
+
+    private void responder(HttpServletResponse response, int status, String estado, String mensaje) throws IOException {
+        response.setStatus(status);
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+
+        ObjectNode json = objectMapper.createObjectNode();
+        json.put("estado", estado);
+        if (mensaje != null) {
+            json.put("mensaje", mensaje);
+        }
+
+        PrintWriter writer = response.getWriter();
+        writer.write(json.toString());
+        writer.flush();
+    }
+
+    @Override
+    public void destroy() {
+        synchronized (this) {
+            if (recording != null) {
+                recording.close();
+            }
+        }
+        super.destroy();
+    }
+}
@@ -0,0 +1,134 @@
+package com.enlamano.server;
+
+import java.util.Arrays;
+
+/**
+ * Mapa de claves {@code long} primitivas con direccionamiento abierto (sondeo lineal).
+ * Las búsquedas no crean objetos: ni boxing de la clave ni nodos de entrada.
+ * No es thread-safe; quien lo usa sincroniza. Los valores no pueden ser null.
+ */
+public class LongHashMap<V> {
+
+    private static final float CARGA_MAXIMA = 0.6f;
+
+    private long[] claves;
+    private Object[] valores;
+    private int mascara;
+    private int bits;
+    private int cantidad;
+    private int limite;
+
+    public LongHashMap(int capacidadEsperada) {
+        int capacidad = 16;
+        while (capacidad * CARGA_MAXIMA < capacidadEsperada) {
+            capacidad <<= 1;
+        }
+        asignar(capacidad);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long clave) {
+        for (int i = indice(clave); ; i = (i + 1) & mascara) {
+            Object valor = valores[i];
+            if (valor == null) {
+                return null;
+            }
+            if (claves[i] == clave) {
+                return (V) valor;
+            }
+        }
+    }
+
+    /**
+     * @return el valor anterior, o null si la clave no estaba
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long clave, V valor) {
+        if (valor == null) {
+            throw new IllegalArgumentException("Valor null no soportado");
+        }
+        int i = indice(clave);
+        for (; valores[i] != null; i = (i + 1) & mascara) {
+            if (claves[i] == clave) {
+                V anterior = (V) valores[i];
+                valores[i] = valor;
+                return anterior;
+            }
+        }
+        claves[i] = clave;
+        valores[i] = valor;
+        if (++cantidad > limite) {
+            redimensionar();
+        }
+        return null;
+    }
+
+    /**
+     * Quita la clave desplazando hacia atrás las entradas siguientes de la secuencia de
+     * sondeo, sin dejar marcas de borrado
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long clave) {
+        int i = indice(clave);
+        for (; valores[i] != null; i = (i + 1) & mascara) {
+            if (claves[i] == clave) {
+                V anterior = (V) valores[i];
+                desplazar(i);
+                cantidad--;
+                return anterior;
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        return cantidad;
+    }
+
+    public void clear() {
+        Arrays.fill(valores, null);
+        cantidad = 0;
+    }
+
+    private void desplazar(int libre) {
+        for (int i = (libre + 1) & mascara; valores[i] != null; i = (i + 1) & mascara) {
+            int ideal = indice(claves[i]);
+            // La entrada puede ocupar el hueco si su posición ideal no está entre el hueco y ella
+            if (((i - ideal) & mascara) >= ((i - libre) & mascara)) {
+                claves[libre] = claves[i];
+                valores[libre] = valores[i];
+                libre = i;
+            }
+        }
+        valores[libre] = null;
+    }
+
+    private void redimensionar() {
+        long[] clavesAnteriores = claves;
+        Object[] valoresAnteriores = valores;
+        asignar(claves.length << 1);
+        for (int j = 0; j < valoresAnteriores.length; j++) {
+            if (valoresAnteriores[j] != null) {
+                int i = indice(clavesAnteriores[j]);
+                while (valores[i] != null) {
+                    i = (i + 1) & mascara;
+                }
+                claves[i] = clavesAnteriores[j];
+                valores[i] = valoresAnteriores[j];
+            }
+        }
+    }
+
+    private void asignar(int capacidad) {
+        claves = new long[capacidad];
+        valores = new Object[capacidad];
+        mascara = capacidad - 1;
+        bits = Integer.numberOfTrailingZeros(capacidad);
+        limite = (int) (capacidad * CARGA_MAXIMA);
+    }
+
+    // Hashing de Fibonacci: los bits altos del producto dispersan claves consecutivas
+    private int indice(long clave) {
+        return (int) ((clave * 0x9E3779B97F4A7C15L) >>> (64 - bits));
+    }
+}
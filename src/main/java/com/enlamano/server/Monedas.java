@@ -0,0 +1,134 @@
+package com.enlamano.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Properties;
+
+/**
+ * Registro de monedas. El número de una moneda es su código (ISO como "USD" o numérico del BCU
+ * como "2225") empaquetado en base 37, de modo que cualquier código válido tiene número sin
+ * registrarse y es el mismo en todos los nodos. Los alias de {@code monedas.alias} se registran
+ * al arrancar con el número de su moneda canónica; las consultas solo buscan, nunca registran.
+ */
+public final class Monedas {
+
+    private static final Logger logger = LoggerFactory.getLogger(Monedas.class);
+
+    /** Código vacío, con caracteres no alfanuméricos o de más de 8 caracteres */
+    public static final long DESCONOCIDA = 0L;
+
+    /** Bits que ocupa un número de moneda: 37^8 < 2^42 */
+    static final int BITS = 42;
+
+    private static final int BASE = 37;
+
+    // Alias -> moneda canónica, y canónica -> código; se reemplazan enteros en configurar()
+    private static volatile LongHashMap<Long> alias = new LongHashMap<>(0);
+    private static volatile LongHashMap<String> codigos = new LongHashMap<>(0);
+
+    private Monedas() {
+    }
+
+    /**
+     * Número de la moneda (el de su canónica si es un alias registrado), o {@link #DESCONOCIDA}
+     */
+    public static long id(CharSequence codigo) {
+        long empaquetado = empaquetar(codigo);
+        if (empaquetado == DESCONOCIDA) {
+            return DESCONOCIDA;
+        }
+        Long canonica = alias.get(empaquetado);
+        return canonica != null ? canonica : empaquetado;
+    }
+
+    /**
+     * Código de un número de moneda
+     */
+    public static String codigo(long id) {
+        String registrado = codigos.get(id);
+        return registrado != null ? registrado : desempaquetar(id);
+    }
+
+    /**
+     * Código canónico (los alias se traducen a su moneda), o el mismo texto si no es un código válido
+     */
+    public static String canonica(String codigo) {
+        long id = id(codigo);
+        return id == DESCONOCIDA ? codigo : codigo(id);
+    }
+
+    /**
+     * Registra las monedas canónicas y los alias de {@code monedas.alias} (lista alias:canónica
+     * separada por comas). Se llama al arrancar, antes de atender consultas.
+     */
+    public static void configurar(Properties config) {
+        String lista = System.getProperty("monedas.alias", config.getProperty("monedas.alias", ""));
+        LongHashMap<Long> nuevosAlias = new LongHashMap<>(16);
+        LongHashMap<String> nuevosCodigos = new LongHashMap<>(16);
+        for (String par : lista.split(",")) {
+            int separador = par.indexOf(':');
+            if (separador < 0) {
+                continue;
+            }
+            long empaquetado = empaquetar(par.substring(0, separador));
+            long canonica = empaquetar(par.substring(separador + 1));
+            if (empaquetado == DESCONOCIDA || canonica == DESCONOCIDA) {
+                logger.warn("Alias de moneda inválido: {}", par.trim());
+                continue;
+            }
+            nuevosAlias.put(empaquetado, canonica);
+            nuevosCodigos.put(canonica, desempaquetar(canonica));
+        }
+        codigos = nuevosCodigos;
+        alias = nuevosAlias;
+    }
+
+    /**
+     * Hasta 8 caracteres alfanuméricos ASCII, sin distinguir mayúsculas, en base 37 con dígitos
+     * de 1 a 36 (cada código tiene un único valor); {@link #DESCONOCIDA} si no es un código
+     * válido. Se ignoran los espacios al inicio y al final.
+     */
+    static long empaquetar(CharSequence codigo) {
+        if (codigo == null) {
+            return DESCONOCIDA;
+        }
+        int inicio = 0;
+        int fin = codigo.length();
+        while (inicio < fin && codigo.charAt(inicio) == ' ') {
+            inicio++;
+        }
+        while (fin > inicio && codigo.charAt(fin - 1) == ' ') {
+            fin--;
+        }
+        if (fin - inicio == 0 || fin - inicio > 8) {
+            return DESCONOCIDA;
+        }
+        long empaquetado = 0;
+        for (int i = inicio; i < fin; i++) {
+            char c = codigo.charAt(i);
+            int valor;
+            if (c >= '0' && c <= '9') {
+                valor = 1 + c - '0';
+            } else if (c >= 'A' && c <= 'Z') {
+                valor = 11 + c - 'A';
+            } else if (c >= 'a' && c <= 'z') {
+                valor = 11 + c - 'a';
+            } else {
+                return DESCONOCIDA;
+            }
+            empaquetado = empaquetado * BASE + valor;
+        }
+        return empaquetado;
+    }
+
+    static String desempaquetar(long empaquetado) {
+        char[] letras = new char[8];
+        int posicion = letras.length;
+        for (long resto = empaquetado; resto > 0; resto /= BASE) {
+            int valor = (int) (resto % BASE);
+            letras[--posicion] = (char) (valor <= 10 ? '0' + valor - 1 : 'A' + valor - 11);
+        }
+        return new String(letras, posicion, letras.length - posicion);
+    }
+}
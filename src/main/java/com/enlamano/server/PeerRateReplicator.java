@@ -0,0 +1,390 @@
+package com.enlamano.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replicación de cotizaciones entre instancias del gateway.
+ * Cada (moneda, fecha) tiene un nodo propietario según hashing consistente; ante un fallo
+ * de cache local se consulta primero al propietario, que la obtiene del BCU si no la tiene,
+ * y solo si no responde se va directo al BCU.
+ * Las cotizaciones obtenidas del BCU se anuncian de forma asíncrona al resto de los nodos.
+ * Un nodo que acumula {@code peer.failures} errores o timeouts consecutivos se deja de consultar
+ * durante {@code peer.backoff.seconds}.
+ */
+public class PeerRateReplicator {
+
+    private static final Logger logger = LoggerFactory.getLogger(PeerRateReplicator.class);
+
+    public static final String RUTA_INTERNA = "/internal/peer/rates";
+    public static final String HEADER_TOKEN = "X-Peer-Token";
+
+    private static final int NODOS_VIRTUALES = 128;
+
+    private final String nodoLocal;
+    private final List<String> nodos;
+    private final TreeMap<Long, String> anillo = new TreeMap<>();
+    private final String token;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final CloseableHttpClient httpClient;
+    private final RequestConfig configConsulta;
+    private final ThreadPoolExecutor anuncios;
+    private final Map<String, EstadoNodo> estados = new HashMap<>();
+    private final int fallosParaEvitar;
+    private final long evitarNanos;
+
+    private final AtomicLong aciertosRemotos = new AtomicLong();
+    private final AtomicLong fallosRemotos = new AtomicLong();
+    private final AtomicLong omitidas = new AtomicLong();
+    private final AtomicLong anunciosEnviados = new AtomicLong();
+    private final AtomicLong anunciosRecibidos = new AtomicLong();
+
+    private PeerRateReplicator(String nodoLocal, List<String> nodos, Properties config) {
+        this.nodoLocal = nodoLocal;
+        this.nodos = Collections.unmodifiableList(nodos);
+        this.token = propiedad(config, "peer.token", "");
+
+        for (String nodo : nodos) {
+            for (int i = 0; i < NODOS_VIRTUALES; i++) {
+                anillo.put(hash(nodo + "#" + i), nodo);
+            }
+            estados.put(nodo, new EstadoNodo());
+        }
+        this.fallosParaEvitar = Integer.parseInt(propiedad(config, "peer.failures", "3"));
+        this.evitarNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(propiedad(config, "peer.backoff.seconds", "10")));
+
+        int timeout = Integer.parseInt(propiedad(config, "peer.timeout.ms", "300"));
+        PoolingHttpClientConnectionManager conexiones = new PoolingHttpClientConnectionManager();
+        conexiones.setMaxTotal(nodos.size() * 8);
+        conexiones.setDefaultMaxPerRoute(8);
+        RequestConfig requestConfig = RequestConfig.custom()
+            .setConnectTimeout(timeout)
+            .setSocketTimeout(timeout)
+            .setConnectionRequestTimeout(timeout)
+            .build();
+        this.httpClient = HttpClients.custom()
+            .setConnectionManager(conexiones)
+            .setDefaultRequestConfig(requestConfig)
+            .build();
+        // Ante un fallo de cache el propietario consulta al BCU: la respuesta puede demorar un RTT del BCU
+        this.configConsulta = RequestConfig.copy(requestConfig)
+            .setSocketTimeout(Integer.parseInt(propiedad(config, "peer.fetch.timeout.ms", "3000")))
+            .build();
+
+        // Los anuncios son best-effort: si la cola se llena se descartan
+        this.anuncios = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(1000), new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    /**
+     * Crea el replicador si el modo peer está configurado (peer.self y peer.nodes), o null en caso contrario.
+     * Las propiedades de sistema tienen precedencia sobre bcu-config.properties.
+     * El modo peer exige {@code peer.token}: el endpoint interno escribe en la cache y está
+     * expuesto en los mismos conectores que la API.
+     */
+    public static PeerRateReplicator crear(Properties config) {
+        String self = propiedad(config, "peer.self", "").trim();
+        String lista = propiedad(config, "peer.nodes", "").trim();
+        if (self.isEmpty() || lista.isEmpty()) {
+            return null;
+        }
+        if (propiedad(config, "peer.token", "").isEmpty()) {
+            throw new IllegalStateException("El modo peer requiere peer.token");
+        }
+
+        List<String> nodos = new ArrayList<>();
+        for (String nodo : lista.split(",")) {
+            if (!nodo.trim().isEmpty()) {
+                nodos.add(normalizar(nodo));
+            }
+        }
+        self = normalizar(self);
+        if (!nodos.contains(self)) {
+            nodos.add(self);
+        }
+
+        logger.info("Modo peer habilitado. Nodo local: {}, nodos: {}", self, nodos);
+        return new PeerRateReplicator(self, nodos, config);
+    }
+
+    /**
+     * Nodo propietario de la cotización según el anillo de hashing consistente
+     */
+    public String propietario(String moneda, String fecha) {
+        return propietario(ClaveCotizacion.clave(moneda, fecha), moneda, fecha);
+    }
+
+    /**
+     * @param clave clave ya calculada de (moneda, fecha); con {@link ClaveCotizacion#INVALIDA}
+     *        se usa el texto de ambas
+     */
+    public String propietario(long clave, String moneda, String fecha) {
+        long punto = clave != ClaveCotizacion.INVALIDA
+            ? ClaveCotizacion.hashEntreNodos(clave) : hash(moneda + "|" + fecha);
+        SortedMap<Long, String> cola = anillo.tailMap(punto);
+        return cola.isEmpty() ? anillo.firstEntry().getValue() : cola.get(cola.firstKey());
+    }
+
+    public boolean esPropietario(long clave, String moneda, String fecha) {
+        return propietario(clave, moneda, fecha).equals(nodoLocal);
+    }
+
+    /**
+     * Consulta la cotización al nodo propietario. Devuelve null si el nodo local es el
+     * propietario, si el propietario no pudo obtenerla, si no responde a tiempo o si se lo
+     * está evitando por fallos consecutivos.
+     */
+    public BcuSoapResponse consultarPropietario(String moneda, String fecha) {
+        return consultarPropietario(ClaveCotizacion.clave(moneda, fecha), moneda, fecha);
+    }
+
+    public BcuSoapResponse consultarPropietario(long clave, String moneda, String fecha) {
+        String propietario = propietario(clave, moneda, fecha);
+        if (propietario.equals(nodoLocal)) {
+            return null;
+        }
+        EstadoNodo estado = estados.get(propietario);
+        if (estado.evitar()) {
+            omitidas.incrementAndGet();
+            return null;
+        }
+
+        try {
+            HttpGet get = new HttpGet(new URIBuilder(propietario + RUTA_INTERNA)
+                .addParameter("moneda", moneda)
+                .addParameter("fecha", fecha)
+                .build());
+            get.setHeader(HEADER_TOKEN, token);
+            get.setConfig(configConsulta);
+
+            try (CloseableHttpResponse response = httpClient.execute(get)) {
+                int status = response.getStatusLine().getStatusCode();
+                if (status != HttpStatus.SC_OK) {
+                    EntityUtils.consumeQuietly(response.getEntity());
+                    fallosRemotos.incrementAndGet();
+                    // 404 (no es el propietario según su anillo) o 502 (falló el BCU): el nodo responde
+                    if (status == HttpStatus.SC_NOT_FOUND || status == HttpStatus.SC_BAD_GATEWAY) {
+                        estado.registrarExito();
+                    } else {
+                        registrarFallo(propietario, estado, "HTTP " + status);
+                    }
+                    return null;
+                }
+                BcuSoapResponse cotizacion = objectMapper.readValue(
+                    EntityUtils.toByteArray(response.getEntity()), BcuSoapResponse.class);
+                estado.registrarExito();
+                aciertosRemotos.incrementAndGet();
+                logger.debug("Cotización {} {} obtenida del nodo {}", moneda, fecha, propietario);
+                return cotizacion;
+            }
+        } catch (Exception e) {
+            fallosRemotos.incrementAndGet();
+            registrarFallo(propietario, estado, e.toString());
+            return null;
+        }
+    }
+
+    private void registrarFallo(String nodo, EstadoNodo estado, String motivo) {
+        if (estado.registrarFallo(fallosParaEvitar, evitarNanos)) {
+            logger.warn("Nodo {} evitado por {} s tras {} fallos consecutivos: {}",
+                nodo, TimeUnit.NANOSECONDS.toSeconds(evitarNanos), fallosParaEvitar, motivo);
+        } else {
+            logger.warn("No se pudo consultar al nodo {}: {}", nodo, motivo);
+        }
+    }
+
+    /**
+     * Anuncia de forma asíncrona una cotización recién obtenida del BCU al resto de los nodos
+     */
+    public void anunciar(final String moneda, final String fecha, final BcuSoapResponse cotizacion) {
+        final byte[] cuerpo;
+        try {
+            ObjectNode anuncio = objectMapper.createObjectNode();
+            anuncio.put("moneda", moneda);
+            anuncio.put("fecha", fecha);
+            anuncio.set("cotizacion", objectMapper.valueToTree(cotizacion));
+            cuerpo = objectMapper.writeValueAsBytes(anuncio);
+        } catch (Exception e) {
+            logger.warn("No se pudo serializar el anuncio: {}", e.getMessage());
+            return;
+        }
+
+        for (final String nodo : nodos) {
+            final EstadoNodo estado = estados.get(nodo);
+            if (nodo.equals(nodoLocal) || estado.evitar()) {
+                continue;
+            }
+            anuncios.execute(new Runnable() {
+                @Override
+                public void run() {
+                    HttpPost post = new HttpPost(nodo + RUTA_INTERNA);
+                    post.setHeader(HEADER_TOKEN, token);
+                    post.setEntity(new ByteArrayEntity(cuerpo, ContentType.APPLICATION_JSON));
+                    try (CloseableHttpResponse response = httpClient.execute(post)) {
+                        EntityUtils.consumeQuietly(response.getEntity());
+                        estado.registrarExito();
+                        anunciosEnviados.incrementAndGet();
+                    } catch (IOException e) {
+                        logger.debug("Anuncio al nodo {} fallido: {}", nodo, e.getMessage());
+                        estado.registrarFallo(fallosParaEvitar, evitarNanos);
+                    }
+                }
+            });
+        }
+    }
+
+    public boolean tokenValido(String recibido) {
+        // Comparación en tiempo constante
+        return recibido != null && MessageDigest.isEqual(
+            token.getBytes(StandardCharsets.UTF_8), recibido.getBytes(StandardCharsets.UTF_8));
+    }
+
+    void registrarAnuncioRecibido() {
+        anunciosRecibidos.incrementAndGet();
+    }
+
+    public String getNodoLocal() {
+        return nodoLocal;
+    }
+
+    public List<String> getNodos() {
+        return nodos;
+    }
+
+    public long getAciertosRemotos() {
+        return aciertosRemotos.get();
+    }
+
+    public long getFallosRemotos() {
+        return fallosRemotos.get();
+    }
+
+    /**
+     * Consultas que no se enviaron al propietario porque se lo estaba evitando
+     */
+    public long getOmitidas() {
+        return omitidas.get();
+    }
+
+    /**
+     * Nodos que se están evitando por fallos consecutivos
+     */
+    public List<String> getNodosEvitados() {
+        List<String> evitados = new ArrayList<>();
+        for (Map.Entry<String, EstadoNodo> entrada : estados.entrySet()) {
+            if (entrada.getValue().evitar()) {
+                evitados.add(entrada.getKey());
+            }
+        }
+        return evitados;
+    }
+
+    public long getAnunciosEnviados() {
+        return anunciosEnviados.get();
+    }
+
+    public long getAnunciosRecibidos() {
+        return anunciosRecibidos.get();
+    }
+
+    public void close() {
+        // Los anuncios pendientes se descartan; el que está en curso termina antes de cerrar el cliente
+        anuncios.shutdownNow();
+        try {
+            anuncios.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            logger.warn("Error cerrando cliente HTTP de peers: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Fallos consecutivos de un nodo y, si se lo está evitando, hasta cuándo
+     */
+    private static final class EstadoNodo {
+        private final AtomicInteger fallosConsecutivos = new AtomicInteger();
+        private volatile boolean evitado;
+        private volatile long evitarHastaNanos;
+
+        boolean evitar() {
+            return evitado && System.nanoTime() - evitarHastaNanos < 0;
+        }
+
+        void registrarExito() {
+            fallosConsecutivos.set(0);
+            evitado = false;
+        }
+
+        /**
+         * @return true si este fallo hace que se empiece a evitar el nodo
+         */
+        boolean registrarFallo(int fallosParaEvitar, long evitarNanos) {
+            if (fallosConsecutivos.incrementAndGet() < fallosParaEvitar) {
+                return false;
+            }
+            // Vencida la espera, un nuevo fallo vuelve a evitarlo
+            evitarHastaNanos = System.nanoTime() + evitarNanos;
+            boolean nuevo = !evitado;
+            evitado = true;
+            return nuevo;
+        }
+    }
+
+    private static String propiedad(Properties config, String nombre, String porDefecto) {
+        return System.getProperty(nombre, config.getProperty(nombre, porDefecto));
+    }
+
+    private static String normalizar(String url) {
+        String limpia = url.trim();
+        return limpia.endsWith("/") ? limpia.substring(0, limpia.length() - 1) : limpia;
+    }
+
+    private static long hash(String valor) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(valor.getBytes(StandardCharsets.UTF_8));
+            long h = 0;
+            for (int i = 0; i < 8; i++) {
+                h = (h << 8) | (digest[i] & 0xff);
+            }
+            return h;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 no disponible", e);
+        }
+    }
+}
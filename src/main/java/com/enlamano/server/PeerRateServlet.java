@@ -0,0 +1,96 @@
+package com.enlamano.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Endpoint interno para el intercambio de cotizaciones entre instancias del gateway.
+ * GET responde desde la cache local; ante un fallo, si este nodo es el propietario de la
+ * cotización la obtiene del BCU (una sola consulta por clave aunque pregunten varios nodos),
+ * y si no lo es responde 404. POST recibe anuncios.
+ */
+public class PeerRateServlet extends HttpServlet {
+
+    private static final Logger logger = LoggerFactory.getLogger(PeerRateServlet.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final BcuSoapClient bcuSoapClient;
+    private final RateCache rateCache;
+    private final PeerRateReplicator replicator;
+
+    public PeerRateServlet(BcuSoapClient bcuSoapClient, PeerRateReplicator replicator) {
+        this.bcuSoapClient = bcuSoapClient;
+        this.rateCache = bcuSoapClient.getRateCache();
+        this.replicator = replicator;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
+        if (!replicator.tokenValido(request.getHeader(PeerRateReplicator.HEADER_TOKEN))) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        String moneda = request.getParameter("moneda");
+        String fecha = request.getParameter("fecha");
+        if (moneda == null || fecha == null) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Parámetros 'moneda' y 'fecha' requeridos");
+            return;
+        }
+
+        long clave = ClaveCotizacion.clave(moneda, fecha);
+        BcuSoapResponse cotizacion = rateCache.get(clave);
+        if (cotizacion == null) {
+            // Solo el propietario va al BCU: un nodo con otro anillo no reenvía la consulta
+            if (!replicator.esPropietario(clave, moneda, fecha)) {
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            try {
+                cotizacion = bcuSoapClient.consultarCotizacion(clave, moneda, fecha);
+            } catch (Exception e) {
+                logger.warn("Cotización {} {} pedida por un peer no disponible: {}", moneda, fecha, e.getMessage());
+                response.setStatus(HttpServletResponse.SC_BAD_GATEWAY);
+                return;
+            }
+        }
+
+        response.setContentType("application/json");
+        response.setStatus(HttpServletResponse.SC_OK);
+        objectMapper.writeValue(response.getOutputStream(), cotizacion);
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
+        if (!replicator.tokenValido(request.getHeader(PeerRateReplicator.HEADER_TOKEN))) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        try {
+            JsonNode anuncio = objectMapper.readTree(request.getInputStream());
+            String moneda = anuncio.path("moneda").asText();
+            String fecha = anuncio.path("fecha").asText();
+            BcuSoapResponse cotizacion = objectMapper.treeToValue(anuncio.path("cotizacion"), BcuSoapResponse.class);
+
+            // Los anuncios recibidos no se reenvían para evitar ciclos
+            rateCache.put(moneda, fecha, cotizacion);
+            replicator.registrarAnuncioRecibido();
+            response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+        } catch (Exception e) {
+            logger.warn("Anuncio de peer inválido: {}", e.getMessage());
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.enlamano.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Carriles de ejecución por clase de prioridad. Cada clase de tráfico tiene su propio
+ * pool acotado, de modo que un lote masivo no ocupa los hilos de las consultas interactivas.
+ * La clase de la petición en curso queda disponible para el limitador hacia el BCU,
+ * que atiende primero a las consultas interactivas en espera.
+ */
+public class PriorityLanes {
+
+    private static final Logger logger = LoggerFactory.getLogger(PriorityLanes.class);
+
+    public static final String HEADER_PRIORIDAD = "X-Prioridad";
+    public static final String HEADER_API_KEY = "X-Api-Key";
+
+    private static final ThreadLocal<TrafficClass> CLASE_ACTUAL = new ThreadLocal<>();
+
+    private final Map<TrafficClass, Carril> carriles = new EnumMap<>(TrafficClass.class);
+    private final Set<String> apiKeysBatch = new HashSet<>();
+
+    public PriorityLanes(Properties config) {
+        // Con hilos virtuales el tamaño del carril solo acota la concurrencia, no consume hilos de plataforma
+        boolean virtual = ThreadingMode.isVirtual();
+        for (TrafficClass clase : TrafficClass.values()) {
+            String prefijo = "lanes." + clase.getNombre() + ".";
+            int hilos = virtual
+                ? Integer.parseInt(config.getProperty(prefijo + "virtual.threads",
+                    clase == TrafficClass.INTERACTIVE ? "2000" : "500"))
+                : Integer.parseInt(config.getProperty(prefijo + "threads",
+                    clase == TrafficClass.INTERACTIVE ? "32" : "8"));
+            int cola = Integer.parseInt(config.getProperty(prefijo + "queue",
+                clase == TrafficClass.INTERACTIVE ? "100" : "500"));
+            carriles.put(clase, new Carril(clase, hilos, cola));
+        }
+
+        String claves = config.getProperty("lanes.batch.apikeys", "");
+        for (String clave : claves.split(",")) {
+            if (!clave.trim().isEmpty()) {
+                apiKeysBatch.add(clave.trim());
+            }
+        }
+    }
+
+    /**
+     * Clase de tráfico de la petición que ejecuta el hilo actual (interactiva por defecto)
+     */
+    public static TrafficClass claseActual() {
+        TrafficClass clase = CLASE_ACTUAL.get();
+        return clase != null ? clase : TrafficClass.INTERACTIVE;
+    }
+
+    /**
+     * Determina la clase de la petición. Una API key de lote es determinante; el header de
+     * prioridad, que envía el propio cliente, solo puede bajar la petición a lote.
+     */
+    public TrafficClass clasificar(HttpServletRequest request) {
+        String apiKey = request.getHeader(HEADER_API_KEY);
+        if (apiKey != null && apiKeysBatch.contains(apiKey.trim())) {
+            return TrafficClass.BATCH;
+        }
+        if (TrafficClass.fromNombre(request.getHeader(HEADER_PRIORIDAD)) == TrafficClass.BATCH) {
+            return TrafficClass.BATCH;
+        }
+        return TrafficClass.INTERACTIVE;
+    }
+
+    /**
+     * Encola la tarea en el carril de su clase; si el carril está saturado la petición se descarta
+     */
+    public void ejecutar(TrafficClass clase, Runnable tarea) throws BcuSobrecargaException {
+        Carril carril = carriles.get(clase);
+        try {
+            carril.ejecutar(tarea);
+        } catch (RejectedExecutionException e) {
+            carril.rechazadas.incrementAndGet();
+            throw new BcuSobrecargaException("Carril " + clase.getNombre() + " saturado, intente nuevamente");
+        }
+    }
+
+    public Collection<Carril> getCarriles() {
+        return carriles.values();
+    }
+
+    public void shutdown() {
+        for (Carril carril : carriles.values()) {
+            carril.executor.shutdown();
+        }
+    }
+
+    /**
+     * Pool acotado y métricas de latencia de una clase de tráfico
+     */
+    public static class Carril {
+
+        private final TrafficClass clase;
+        private final ThreadPoolExecutor executor;
+
+        private final AtomicLong completadas = new AtomicLong();
+        private final AtomicLong rechazadas = new AtomicLong();
+        private final AtomicLong latenciaTotalNanos = new AtomicLong();
+        private final AtomicLong esperaTotalNanos = new AtomicLong();
+        private final LongAccumulator latenciaMaximaNanos = new LongAccumulator(Math::max, 0);
+
+        Carril(TrafficClass clase, int hilos, int cola) {
+            this.clase = clase;
+            this.executor = new ThreadPoolExecutor(hilos, hilos, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(cola), ThreadingMode.threadFactory("carril-" + clase.getNombre() + "-"));
+            this.executor.allowCoreThreadTimeOut(true);
+        }
+
+        void ejecutar(final Runnable tarea) {
+            final long encolado = System.nanoTime();
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long inicio = System.nanoTime();
+                    esperaTotalNanos.addAndGet(inicio - encolado);
+                    CLASE_ACTUAL.set(clase);
+                    try {
+                        tarea.run();
+                    } catch (RuntimeException e) {
+                        logger.error("Error no controlado en carril {}", clase.getNombre(), e);
+                    } finally {
+                        CLASE_ACTUAL.remove();
+                        long latencia = System.nanoTime() - encolado;
+                        latenciaTotalNanos.addAndGet(latencia);
+                        latenciaMaximaNanos.accumulate(latencia);
+                        completadas.incrementAndGet();
+                    }
+                }
+            });
+        }
+
+        public TrafficClass getClase() {
+            return clase;
+        }
+
+        public int getHilosActivos() {
+            return executor.getActiveCount();
+        }
+
+        public int getEnCola() {
+            return executor.getQueue().size();
+        }
+
+        public long getCompletadas() {
+            return completadas.get();
+        }
+
+        public long getRechazadas() {
+            return rechazadas.get();
+        }
+
+        public double getLatenciaPromedioMillis() {
+            long total = completadas.get();
+            return total == 0 ? 0 : latenciaTotalNanos.get() / (total * 1_000_000.0);
+        }
+
+        public double getLatenciaMaximaMillis() {
+            return latenciaMaximaNanos.get() / 1_000_000.0;
+        }
+
+        public double getEsperaPromedioMillis() {
+            long total = completadas.get();
+            return total == 0 ? 0 : esperaTotalNanos.get() / (total * 1_000_000.0);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.enlamano.server;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache local de cotizaciones por (moneda, fecha), indexada por {@link ClaveCotizacion}.
+ * Las cotizaciones de fechas pasadas no cambian y se conservan hasta ser desplazadas (LRU);
+ * las del día actual expiran tras un TTL corto por si el BCU las corrige.
+ * Las consultas con moneda o fecha no reconocidas no se cachean.
+ */
+public class RateCache {
+
+    /**
+     * Notificación de cotizaciones que ingresan a la cache (desde el BCU o desde un peer)
+     */
+    public interface Listener {
+        void cotizacionActualizada(String moneda, String fecha, BcuSoapResponse cotizacion);
+    }
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final int maxEntradas;
+    private final long ttlHoyNanos;
+    private final LongHashMap<Entrada> entradas;
+
+    // Lista de uso: la primera es la usada más recientemente, la última se desplaza primero
+    private Entrada primera;
+    private Entrada ultima;
+
+    private final AtomicLong aciertos = new AtomicLong();
+    private final AtomicLong fallos = new AtomicLong();
+
+    public RateCache(Properties config) {
+        this.maxEntradas = Integer.parseInt(config.getProperty("cache.max.entries", "10000"));
+        this.ttlHoyNanos = TimeUnit.SECONDS.toNanos(
+            Long.parseLong(config.getProperty("cache.ttl.today.seconds", "300")));
+        this.entradas = new LongHashMap<>(Math.min(maxEntradas, 4096));
+    }
+
+    public BcuSoapResponse get(String moneda, String fecha) {
+        return get(ClaveCotizacion.clave(moneda, fecha));
+    }
+
+    public BcuSoapResponse get(long clave) {
+        if (clave != ClaveCotizacion.INVALIDA) {
+            synchronized (entradas) {
+                Entrada entrada = entradas.get(clave);
+                if (entrada != null && entrada.vigente()) {
+                    desenlazar(entrada);
+                    enlazarAlFrente(entrada);
+                    aciertos.incrementAndGet();
+                    return entrada.cotizacion;
+                }
+                if (entrada != null) {
+                    entradas.remove(clave);
+                    desenlazar(entrada);
+                }
+            }
+        }
+        fallos.incrementAndGet();
+        return null;
+    }
+
+    public void put(String moneda, String fecha, BcuSoapResponse cotizacion) {
+        put(ClaveCotizacion.clave(moneda, fecha), moneda, fecha, cotizacion);
+    }
+
+    /**
+     * @param clave clave ya calculada de (moneda, fecha), que se reciben solo para los listeners
+     */
+    public void put(long clave, String moneda, String fecha, BcuSoapResponse cotizacion) {
+        if (clave != ClaveCotizacion.INVALIDA) {
+            long expira = ClaveCotizacion.dia(clave) >= ClaveCotizacion.hoy()
+                ? System.nanoTime() + ttlHoyNanos : Long.MAX_VALUE;
+            Entrada nueva = new Entrada(clave, cotizacion, expira);
+            synchronized (entradas) {
+                Entrada anterior = entradas.put(clave, nueva);
+                if (anterior != null) {
+                    desenlazar(anterior);
+                }
+                enlazarAlFrente(nueva);
+                if (entradas.size() > maxEntradas) {
+                    Entrada desplazada = ultima;
+                    entradas.remove(desplazada.clave);
+                    desenlazar(desplazada);
+                }
+            }
+        }
+        for (Listener listener : listeners) {
+            listener.cotizacionActualizada(moneda, fecha, cotizacion);
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public int size() {
+        synchronized (entradas) {
+            return entradas.size();
+        }
+    }
+
+    public long getAciertos() {
+        return aciertos.get();
+    }
+
+    public long getFallos() {
+        return fallos.get();
+    }
+
+    private void enlazarAlFrente(Entrada entrada) {
+        entrada.anterior = null;
+        entrada.siguiente = primera;
+        if (primera != null) {
+            primera.anterior = entrada;
+        }
+        primera = entrada;
+        if (ultima == null) {
+            ultima = entrada;
+        }
+    }
+
+    private void desenlazar(Entrada entrada) {
+        if (entrada.anterior != null) {
+            entrada.anterior.siguiente = entrada.siguiente;
+        } else {
+            primera = entrada.siguiente;
+        }
+        if (entrada.siguiente != null) {
+            entrada.siguiente.anterior = entrada.anterior;
+        } else {
+            ultima = entrada.anterior;
+        }
+        entrada.anterior = null;
+        entrada.siguiente = null;
+    }
+
+    private static final class Entrada {
+        private final long clave;
+        private final BcuSoapResponse cotizacion;
+        private final long expiraNanos;
+        private Entrada anterior;
+        private Entrada siguiente;
+
+        Entrada(long clave, BcuSoapResponse cotizacion, long expiraNanos) {
+            this.clave = clave;
+            this.cotizacion = cotizacion;
+            this.expiraNanos = expiraNanos;
+        }
+
+        boolean vigente() {
+            return expiraNanos == Long.MAX_VALUE || System.nanoTime() - expiraNanos < 0;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.enlamano.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publica por Server-Sent Events las cotizaciones del día a medida que el BCU las publica.
+ * Un único sondeo por moneda (a través de la cache) alimenta a todos los suscriptores, y las
+ * cotizaciones que ingresan a la cache por otras consultas o por peers también se difunden.
+ */
+public class RatePublisher implements RateCache.Listener {
+
+    private static final Logger logger = LoggerFactory.getLogger(RatePublisher.class);
+
+    private static final byte[] HEARTBEAT = ": ping\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final BcuSoapClient bcuSoapClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, Set<Subscriber>> suscriptores = new ConcurrentHashMap<>();
+    private final Map<String, Publicada> ultimas = new ConcurrentHashMap<>();
+    private final Set<Subscriber> todos = ConcurrentHashMap.newKeySet();
+    private final int maxSuscriptores;
+    private final ScheduledExecutorService scheduler;
+
+    public RatePublisher(BcuSoapClient bcuSoapClient) {
+        this.bcuSoapClient = bcuSoapClient;
+        Properties config = bcuSoapClient.getConfig();
+        this.maxSuscriptores = Integer.parseInt(config.getProperty("stream.max.subscribers", "10000"));
+        long sondeo = Long.parseLong(config.getProperty("stream.poll.seconds", "60"));
+        long heartbeat = Long.parseLong(config.getProperty("stream.heartbeat.seconds", "20"));
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "sse-publisher");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                sondear();
+            }
+        }, sondeo, sondeo, TimeUnit.SECONDS);
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                difundir(null, HEARTBEAT);
+            }
+        }, heartbeat, heartbeat, TimeUnit.SECONDS);
+
+        bcuSoapClient.getRateCache().addListener(this);
+    }
+
+    /**
+     * Registra un suscriptor para las monedas indicadas y le envía la última cotización conocida
+     */
+    public boolean suscribir(Subscriber subscriber, Set<String> monedas) {
+        if (todos.size() >= maxSuscriptores) {
+            return false;
+        }
+        todos.add(subscriber);
+        long hoy = ClaveCotizacion.hoy();
+        for (String codigo : monedas) {
+            String moneda = Monedas.canonica(codigo);
+            Set<Subscriber> set = suscriptores.get(moneda);
+            if (set == null) {
+                Set<Subscriber> nuevo = new CopyOnWriteArraySet<>();
+                set = suscriptores.putIfAbsent(moneda, nuevo);
+                if (set == null) {
+                    set = nuevo;
+                }
+            }
+            set.add(subscriber);
+
+            Publicada ultima = ultimas.get(moneda);
+            if (ultima != null && ultima.dia == hoy) {
+                subscriber.enviar(ultima.evento);
+            }
+        }
+        return true;
+    }
+
+    public void desuscribir(Subscriber subscriber, Set<String> monedas) {
+        for (String codigo : monedas) {
+            Set<Subscriber> set = suscriptores.get(Monedas.canonica(codigo));
+            if (set != null) {
+                set.remove(subscriber);
+            }
+        }
+        todos.remove(subscriber);
+    }
+
+    /**
+     * Se invoca dentro de {@link RateCache#put} en el hilo de la consulta: solo descarta las
+     * fechas que no son de hoy y delega la difusión al hilo del publicador
+     */
+    @Override
+    public void cotizacionActualizada(final String codigo, final String fecha, final BcuSoapResponse cotizacion) {
+        // Cualquier formato de fecha o alias de moneda con que haya llegado la cotización
+        final long dia = ClaveCotizacion.diaEpoch(fecha);
+        if (dia != ClaveCotizacion.hoy()) {
+            return;
+        }
+        try {
+            scheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    publicar(codigo, fecha, dia, cotizacion);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Publicador detenido
+        }
+    }
+
+    private void publicar(String codigo, String fecha, long dia, BcuSoapResponse cotizacion) {
+        String moneda = Monedas.canonica(codigo);
+        String iso = LocalDate.ofEpochDay(dia).toString();
+        Publicada nueva = new Publicada(dia, cotizacion, evento(moneda, iso, cotizacion));
+        Publicada anterior = ultimas.put(moneda, nueva);
+        if (anterior != null && anterior.dia == dia
+                && anterior.cotizacion.getCompra() == cotizacion.getCompra()
+                && anterior.cotizacion.getVenta() == cotizacion.getVenta()) {
+            return;
+        }
+        logger.info("Nueva cotización publicada: {} {} = {} / {}",
+            moneda, fecha, cotizacion.getCompra(), cotizacion.getVenta());
+        difundir(moneda, nueva.evento);
+    }
+
+    private void sondear() {
+        long dia = ClaveCotizacion.hoy();
+        String hoy = LocalDate.ofEpochDay(dia).toString();
+        for (Map.Entry<String, Set<Subscriber>> entrada : suscriptores.entrySet()) {
+            if (entrada.getValue().isEmpty()) {
+                continue;
+            }
+            try {
+                // Pasa por la cache: a lo sumo una consulta al BCU por moneda y TTL
+                BcuSoapResponse cotizacion = bcuSoapClient.consultarCotizacion(entrada.getKey(), hoy);
+                publicar(entrada.getKey(), hoy, dia, cotizacion);
+            } catch (Exception e) {
+                logger.debug("Sondeo de {} sin resultado: {}", entrada.getKey(), e.getMessage());
+            }
+        }
+    }
+
+    private void difundir(String moneda, byte[] evento) {
+        if (moneda == null) {
+            for (Subscriber subscriber : todos) {
+                subscriber.enviar(evento);
+            }
+            return;
+        }
+        Set<Subscriber> set = suscriptores.get(moneda);
+        if (set != null) {
+            for (Subscriber subscriber : set) {
+                subscriber.enviar(evento);
+            }
+        }
+    }
+
+    private byte[] evento(String moneda, String fecha, BcuSoapResponse cotizacion) {
+        ObjectNode datos = objectMapper.createObjectNode();
+        datos.put("moneda", moneda);
+        datos.put("fecha", fecha);
+        datos.put("compra", cotizacion.getCompra());
+        datos.put("venta", cotizacion.getVenta());
+        String texto = "event: cotizacion\nid: " + moneda + "-" + fecha + "\ndata: " + datos + "\n\n";
+        return texto.getBytes(StandardCharsets.UTF_8);
+    }
+
+    public int getSuscriptores() {
+        return todos.size();
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private static final class Publicada {
+        private final long dia;
+        private final BcuSoapResponse cotizacion;
+        private final byte[] evento;
+
+        Publicada(long dia, BcuSoapResponse cotizacion, byte[] evento) {
+            this.dia = dia;
+            this.cotizacion = cotizacion;
+            this.evento = evento;
+        }
+    }
+
+    /**
+     * Destino de eventos de un cliente suscrito
+     */
+    public interface Subscriber {
+        void enviar(byte[] evento);
+    }
+}
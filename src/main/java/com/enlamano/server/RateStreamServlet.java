@@ -0,0 +1,176 @@
+package com.enlamano.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Endpoint Server-Sent Events con las cotizaciones del día: GET /api/bcu/stream?moneda=USD,EUR
+ * Cada suscriptor se mantiene con I/O asíncrona (sin un hilo por cliente): los eventos se
+ * encolan y se escriben con un WriteListener cuando el socket acepta datos.
+ */
+public class RateStreamServlet extends HttpServlet {
+
+    private static final Logger logger = LoggerFactory.getLogger(RateStreamServlet.class);
+
+    // Eventos pendientes tolerados antes de desconectar a un cliente lento
+    private static final int MAX_PENDIENTES = 64;
+
+    private final RatePublisher publisher;
+
+    public RateStreamServlet(RatePublisher publisher) {
+        this.publisher = publisher;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
+        Set<String> monedas = new LinkedHashSet<>();
+        String parametro = request.getParameter("moneda");
+        if (parametro != null) {
+            for (String moneda : parametro.split(",")) {
+                if (!moneda.trim().isEmpty()) {
+                    monedas.add(moneda.trim().toUpperCase());
+                }
+            }
+        }
+        if (monedas.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Parámetro 'moneda' requerido");
+            return;
+        }
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType("text/event-stream");
+        response.setCharacterEncoding("UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        response.setHeader("X-Accel-Buffering", "no");
+        response.setHeader("Access-Control-Allow-Origin", "*");
+
+        AsyncContext asyncContext = request.startAsync();
+        asyncContext.setTimeout(0);
+
+        SseSubscriber subscriber = new SseSubscriber(asyncContext, response.getOutputStream(), monedas);
+        asyncContext.addListener(subscriber);
+        if (!publisher.suscribir(subscriber, monedas)) {
+            logger.warn("Límite de suscriptores SSE alcanzado");
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            asyncContext.complete();
+            return;
+        }
+        // Comentario inicial para que el cliente confirme la conexión
+        subscriber.enviar(": suscrito\n\n".getBytes("UTF-8"));
+        response.getOutputStream().setWriteListener(subscriber);
+    }
+
+    /**
+     * Cliente SSE conectado: cola de eventos y escritura no bloqueante
+     */
+    private class SseSubscriber implements RatePublisher.Subscriber, WriteListener, AsyncListener {
+
+        private final AsyncContext asyncContext;
+        private final ServletOutputStream out;
+        private final Set<String> monedas;
+        private final Queue<byte[]> pendientes = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger cantidadPendientes = new AtomicInteger();
+        private volatile boolean listo;
+        private volatile boolean cerrado;
+
+        SseSubscriber(AsyncContext asyncContext, ServletOutputStream out, Set<String> monedas) {
+            this.asyncContext = asyncContext;
+            this.out = out;
+            this.monedas = monedas;
+        }
+
+        @Override
+        public void enviar(byte[] evento) {
+            if (cerrado) {
+                return;
+            }
+            if (cantidadPendientes.incrementAndGet() > MAX_PENDIENTES) {
+                logger.debug("Cliente SSE lento desconectado");
+                cerrar();
+                return;
+            }
+            pendientes.add(evento);
+            if (listo) {
+                escribir();
+            }
+        }
+
+        @Override
+        public void onWritePossible() {
+            listo = true;
+            escribir();
+        }
+
+        private synchronized void escribir() {
+            try {
+                // isReady() en false registra el interés: el contenedor volverá a llamar a onWritePossible
+                while (!cerrado && out.isReady()) {
+                    byte[] evento = pendientes.poll();
+                    if (evento == null) {
+                        out.flush();
+                        return;
+                    }
+                    cantidadPendientes.decrementAndGet();
+                    out.write(evento);
+                }
+            } catch (IOException | IllegalStateException e) {
+                cerrar();
+            }
+        }
+
+        private void cerrar() {
+            if (cerrado) {
+                return;
+            }
+            cerrado = true;
+            publisher.desuscribir(this, monedas);
+            try {
+                asyncContext.complete();
+            } catch (IllegalStateException e) {
+                // Ya completado por el contenedor
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            cerrar();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            cerrar();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            cerrar();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            cerrar();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.enlamano.server;
+
+/**
+ * Datos de una consulta de BcuSoapClient. Esta implementación no registra nada; con JFR
+ * disponible {@link Diagnostico#consulta()} devuelve una que los emite como evento.
+ */
+public class RegistroConsulta {
+
+    public static final String CACHE_ACIERTO = "hit";
+    public static final String CACHE_PEER = "peer";
+    public static final String CACHE_FALLO = "miss";
+    public static final String CACHE_NO_APLICA = "n/a";
+
+    String requestId;
+    String operacion;
+    String moneda;
+    String fecha;
+    long bytes;
+    String endpoint;
+    int reintentos;
+    String resultadoCache = CACHE_NO_APLICA;
+    boolean exito;
+
+    /**
+     * Marca el inicio de la consulta
+     */
+    public void iniciar() {
+    }
+
+    /**
+     * true si una grabación activa acepta el registro: los datos costosos se completan solo entonces
+     */
+    public boolean habilitado() {
+        return false;
+    }
+
+    /**
+     * Marca el fin de la consulta; true si el registro debe completarse y emitirse
+     */
+    public boolean terminar() {
+        return false;
+    }
+
+    public void emitir() {
+    }
+}
@@ -0,0 +1,32 @@
+package com.enlamano.server;
+
+/**
+ * Datos de una petición procesada por BcuGatewayServlet. Esta implementación no registra nada;
+ * con JFR disponible {@link Diagnostico#peticion()} devuelve una que los emite como evento.
+ */
+public class RegistroPeticion {
+
+    String requestId;
+    String tipoConsulta;
+    String prioridad;
+    String moneda;
+    String fecha;
+    int status;
+    long bytes;
+
+    /**
+     * Marca el inicio de la petición
+     */
+    public void iniciar() {
+    }
+
+    /**
+     * Marca el fin de la petición; true si el registro debe completarse y emitirse
+     */
+    public boolean terminar() {
+        return false;
+    }
+
+    public void emitir() {
+    }
+}
@@ -0,0 +1,43 @@
+package com.enlamano.server;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+import org.slf4j.MarkerFactory;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Muestreo de los logs informativos por petición. Solo afecta a los eventos INFO o menores
+ * marcados con {@link #PETICION}; advertencias, errores y logs de arranque pasan siempre.
+ * Se decide antes de formatear el mensaje, por lo que los eventos descartados no tienen costo.
+ * Los eventos del precalentamiento de arranque ({@link StartupWarmup}) se descartan siempre.
+ */
+public class RequestLogSamplingFilter extends TurboFilter {
+
+    /** Marca de los logs emitidos una o más veces por cada petición */
+    public static final Marker PETICION = MarkerFactory.getMarker("PETICION");
+
+    private double rate = 1.0;
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        if (marker == null || level == null || level.isGreaterOrEqual(Level.WARN)) {
+            return FilterReply.NEUTRAL;
+        }
+        if (!marker.contains(PETICION)) {
+            return FilterReply.NEUTRAL;
+        }
+        if (StartupWarmup.enCurso()) {
+            // Tráfico sintético del arranque
+            return FilterReply.DENY;
+        }
+        return rate >= 1.0 || ThreadLocalRandom.current().nextDouble() < rate ? FilterReply.NEUTRAL : FilterReply.DENY;
+    }
+
+    public void setRate(double rate) {
+        this.rate = rate;
+    }
+}
@@ -0,0 +1,168 @@
+package com.enlamano.server;
+
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Contexto de traza de una petición: identificador y tiempos acumulados por etapa.
+ * Se vincula al hilo que procesa la petición para que el cliente SOAP pueda registrar
+ * sus etapas y etiquetar sus logs sin cambiar las firmas de los métodos.
+ */
+public class RequestTrace {
+
+    public static final String HEADER_REQUEST_ID = "X-Request-Id";
+
+    // Largo máximo de un X-Request-Id recibido; se reenvía en headers y logs
+    static final int MAX_ID = 64;
+
+    /**
+     * Etapas medidas, en el orden en que se reportan en Server-Timing
+     */
+    public enum Etapa {
+        PARSE("parse"),
+        QUEUE("queue"),
+        CACHE("cache"),
+        PEER("peer"),
+        LIMITER("limiter"),
+        BCU("bcu"),
+        BCU_PARSE("bcuparse"),
+        SERIALIZE("serialize");
+
+        private final String nombre;
+
+        Etapa(String nombre) {
+            this.nombre = nombre;
+        }
+
+        public String getNombre() {
+            return nombre;
+        }
+    }
+
+    private static final ThreadLocal<RequestTrace> ACTUAL = new ThreadLocal<>();
+
+    private final String id;
+    private final long inicioNanos;
+    private final long[] duracionesNanos = new long[Etapa.values().length];
+    private final int[] ocurrencias = new int[Etapa.values().length];
+
+    public RequestTrace(String id) {
+        this.id = idValido(id) ? id : generarId();
+        this.inicioNanos = System.nanoTime();
+    }
+
+    /**
+     * Vincula la traza al hilo actual
+     */
+    public void vincular() {
+        ACTUAL.set(this);
+    }
+
+    public static void desvincular() {
+        ACTUAL.remove();
+    }
+
+    /**
+     * Traza de la petición que procesa el hilo actual, o null si no hay ninguna
+     */
+    public static RequestTrace actual() {
+        return ACTUAL.get();
+    }
+
+    /**
+     * Identificador de la petición actual para los logs ("-" fuera de una petición)
+     */
+    public static String idActual() {
+        RequestTrace trace = ACTUAL.get();
+        return trace != null ? trace.id : "-";
+    }
+
+    /**
+     * Registra en la traza actual (si existe) la duración de una etapa desde el instante indicado
+     */
+    public static void registrar(Etapa etapa, long desdeNanos) {
+        RequestTrace trace = ACTUAL.get();
+        if (trace != null) {
+            trace.agregar(etapa, System.nanoTime() - desdeNanos);
+        }
+    }
+
+    public synchronized void agregar(Etapa etapa, long nanos) {
+        duracionesNanos[etapa.ordinal()] += nanos;
+        ocurrencias[etapa.ordinal()]++;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getTotalNanos() {
+        return System.nanoTime() - inicioNanos;
+    }
+
+    /**
+     * Valor del header Server-Timing con las etapas registradas y el total
+     */
+    public synchronized String serverTiming() {
+        StringBuilder sb = new StringBuilder(128);
+        for (Etapa etapa : Etapa.values()) {
+            if (ocurrencias[etapa.ordinal()] > 0) {
+                agregarMetrica(sb, etapa.getNombre(), duracionesNanos[etapa.ordinal()]);
+            }
+        }
+        agregarMetrica(sb, "total", getTotalNanos());
+        return sb.toString();
+    }
+
+    /**
+     * Desglose completo para el log de peticiones lentas
+     */
+    public synchronized String desglose() {
+        StringBuilder sb = new StringBuilder(160);
+        sb.append("total=").append(millis(getTotalNanos())).append("ms");
+        for (Etapa etapa : Etapa.values()) {
+            int veces = ocurrencias[etapa.ordinal()];
+            if (veces > 0) {
+                sb.append(' ').append(etapa.getNombre()).append('=')
+                  .append(millis(duracionesNanos[etapa.ordinal()])).append("ms");
+                if (veces > 1) {
+                    sb.append('(').append(veces).append("x)");
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void agregarMetrica(StringBuilder sb, String nombre, long nanos) {
+        if (sb.length() > 0) {
+            sb.append(", ");
+        }
+        sb.append(nombre).append(";dur=").append(millis(nanos));
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.2f", nanos / 1_000_000.0);
+    }
+
+    /**
+     * Solo se acepta un identificador del cliente de hasta {@link #MAX_ID} caracteres
+     * [A-Za-z0-9._-]; cualquier otro se reemplaza por uno generado
+     */
+    static boolean idValido(String id) {
+        if (id == null || id.isEmpty() || id.length() > MAX_ID) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (!(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z') && !(c >= '0' && c <= '9')
+                    && c != '.' && c != '_' && c != '-') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String generarId() {
+        return Long.toHexString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,93 @@
+package com.enlamano.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import java.io.IOException;
+
+/**
+ * Codificación de respuestas según el header Accept: JSON por defecto, o Smile/CBOR
+ * (JSON binario, sin repetir nombres de campo como texto) para transferencias grandes.
+ */
+public class ResponseEncoder {
+
+    public static final String MIME_JSON = "application/json";
+    public static final String MIME_SMILE = "application/x-jackson-smile";
+    public static final String MIME_CBOR = "application/cbor";
+
+    /**
+     * Formato de salida negociado, con su mapper de Jackson
+     */
+    public enum Formato {
+        JSON(MIME_JSON + ";charset=UTF-8", new ObjectMapper()),
+        SMILE(MIME_SMILE, new ObjectMapper(new SmileFactory())),
+        CBOR(MIME_CBOR, new ObjectMapper(new CBORFactory()));
+
+        private final String contentType;
+        private final ObjectMapper mapper;
+
+        Formato(String contentType, ObjectMapper mapper) {
+            this.contentType = contentType;
+            this.mapper = mapper;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public byte[] codificar(JsonNode node) throws IOException {
+            return mapper.writeValueAsBytes(node);
+        }
+    }
+
+    private ResponseEncoder() {
+    }
+
+    /**
+     * Elige el formato a partir del header Accept (JSON si no se pide un formato binario soportado)
+     */
+    public static Formato negociar(String accept) {
+        if (accept == null || accept.isEmpty()) {
+            return Formato.JSON;
+        }
+        Formato elegido = Formato.JSON;
+        double mejorCalidad = -1;
+        for (String rango : accept.split(",")) {
+            String[] partes = rango.split(";");
+            String tipo = partes[0].trim().toLowerCase();
+            double calidad = 1.0;
+            for (int i = 1; i < partes.length; i++) {
+                String parametro = partes[i].trim();
+                if (parametro.startsWith("q=")) {
+                    try {
+                        calidad = Double.parseDouble(parametro.substring(2));
+                    } catch (NumberFormatException e) {
+                        calidad = 0;
+                    }
+                }
+            }
+
+            if (calidad <= 0) {
+                continue;
+            }
+
+            Formato formato;
+            if (MIME_SMILE.equals(tipo)) {
+                formato = Formato.SMILE;
+            } else if (MIME_CBOR.equals(tipo)) {
+                formato = Formato.CBOR;
+            } else if (MIME_JSON.equals(tipo) || "*/*".equals(tipo) || "application/*".equals(tipo)) {
+                formato = Formato.JSON;
+            } else {
+                continue;
+            }
+            if (calidad > mejorCalidad) {
+                mejorCalidad = calidad;
+                elegido = formato;
+            }
+        }
+        return elegido;
+    }
+}
@@ -0,0 +1,40 @@
+package com.enlamano.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Log muestreado de peticiones lentas con el desglose completo de tiempos por etapa.
+ * Usa un logger propio para poder dirigirlo a un destino separado.
+ */
+public class SlowRequestLog {
+
+    private static final Logger logger = LoggerFactory.getLogger("com.enlamano.server.slow");
+
+    private final long umbralNanos;
+    private final double muestreo;
+
+    public SlowRequestLog(Properties config) {
+        this.umbralNanos = TimeUnit.MILLISECONDS.toNanos(
+            Long.parseLong(config.getProperty("trace.slow.threshold.ms", "1000")));
+        this.muestreo = Double.parseDouble(config.getProperty("trace.slow.sample.rate", "1.0"));
+    }
+
+    /**
+     * Emite el desglose si la petición superó el umbral y cae dentro de la muestra
+     */
+    public void registrar(RequestTrace trace, String uri, TrafficClass clase) {
+        if (trace.getTotalNanos() < umbralNanos) {
+            return;
+        }
+        if (muestreo < 1.0 && ThreadLocalRandom.current().nextDouble() >= muestreo) {
+            return;
+        }
+        logger.warn("[{}] Petición lenta {} (prioridad {}): {}",
+            trace.getId(), uri, clase.getNombre(), trace.desglose());
+    }
+}
@@ -0,0 +1,182 @@
+package com.enlamano.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Precalentamiento de arranque: abre y completa el handshake TLS de las conexiones hacia el BCU
+ * y ejecuta en paralelo el parseo y la serialización con datos sintéticos. El servidor se
+ * reporta listo (/api/ready) solo cuando termina, aunque alguna etapa falle, y el tiempo hasta
+ * listo queda registrado.
+ */
+public class StartupWarmup {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupWarmup.class);
+
+    // Marca el hilo que genera tráfico sintético, para no registrarlo como peticiones reales
+    private static final ThreadLocal<Boolean> EN_CURSO = new ThreadLocal<>();
+
+    private final long inicioNanos = System.nanoTime();
+    private static final String ETAPA_CONEXION = "conexionBcu";
+
+    private final Map<String, Long> etapas = new LinkedHashMap<>();
+    private final Set<String> fallidas = new LinkedHashSet<>();
+    private volatile boolean listo;
+    private volatile long msHastaListo = -1;
+    private volatile long msDesdeInicioJvm = -1;
+
+    /**
+     * Indica si el hilo actual está ejecutando el precalentamiento
+     */
+    public static boolean enCurso() {
+        return EN_CURSO.get() != null;
+    }
+
+    /**
+     * Ejecuta el precalentamiento y marca el servidor como listo. Los fallos (por ejemplo, el BCU
+     * inaccesible) se registran pero no impiden el arranque: la primera consulta los repetirá.
+     * La espera de las conexiones está acotada por {@code startup.prewarm.timeout.ms}.
+     */
+    public void ejecutar(final BcuSoapClient bcuSoapClient, BcuGatewayServlet servlet, ExecutorService executor) {
+        try {
+            precalentar(bcuSoapClient, servlet, executor);
+        } finally {
+            marcarListo();
+        }
+    }
+
+    private void precalentar(final BcuSoapClient bcuSoapClient, BcuGatewayServlet servlet, ExecutorService executor) {
+        Properties config = bcuSoapClient.getConfig();
+        int iteraciones = entero(config, "startup.warmup.iterations", 2000);
+        final int conexiones = entero(config, "startup.prewarm.connections", 2);
+        long timeoutConexiones = entero(config, "startup.prewarm.timeout.ms", 15000);
+
+        Future<?> conexion = null;
+        try {
+            conexion = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    long inicio = System.nanoTime();
+                    try {
+                        int abiertas = bcuSoapClient.precalentarConexiones(conexiones);
+                        logger.info("Conexiones TLS hacia el BCU abiertas de antemano: {}", abiertas);
+                        if (abiertas == 0 && conexiones > 0) {
+                            registrarFallo(ETAPA_CONEXION);
+                        }
+                    } catch (Exception e) {
+                        registrarFallo(ETAPA_CONEXION);
+                        logger.warn("No se pudieron abrir conexiones hacia el BCU durante el arranque: {}", e.toString());
+                    } finally {
+                        registrarEtapa(ETAPA_CONEXION, inicio);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            registrarFallo(ETAPA_CONEXION);
+            logger.warn("No se pudo programar la conexión inicial al BCU: {}", e.toString());
+        }
+
+        EN_CURSO.set(Boolean.TRUE);
+        try {
+            long inicio = System.nanoTime();
+            bcuSoapClient.precalentarParseo(iteraciones);
+            registrarEtapa("parseoSoap", inicio);
+
+            inicio = System.nanoTime();
+            servlet.precalentar(iteraciones);
+            registrarEtapa("serializacion", inicio);
+        } catch (Exception | LinkageError e) {
+            registrarFallo("sintetico");
+            logger.warn("Error en el precalentamiento sintético", e);
+        } finally {
+            EN_CURSO.remove();
+        }
+
+        if (conexion == null) {
+            return;
+        }
+        try {
+            conexion.get(timeoutConexiones, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Se deja de esperar; la primera consulta abrirá la conexión
+            conexion.cancel(true);
+            registrarFallo(ETAPA_CONEXION);
+            logger.warn("La conexión inicial al BCU no terminó en {} ms", timeoutConexiones);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.warn("Error esperando la conexión inicial al BCU: {}", e.toString());
+        }
+    }
+
+    private static int entero(Properties config, String clave, int porDefecto) {
+        String valor = config.getProperty(clave);
+        try {
+            return valor != null ? Integer.parseInt(valor.trim()) : porDefecto;
+        } catch (NumberFormatException e) {
+            logger.warn("Valor inválido para {}: {}; se usa {}", clave, valor, porDefecto);
+            return porDefecto;
+        }
+    }
+
+    private synchronized void registrarFallo(String etapa) {
+        fallidas.add(etapa);
+    }
+
+    /**
+     * Registra la duración de una etapa del arranque iniciada en {@code desdeNanos}
+     */
+    public synchronized void registrarEtapa(String nombre, long desdeNanos) {
+        etapas.put(nombre, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - desdeNanos));
+    }
+
+    private void marcarListo() {
+        msHastaListo = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicioNanos);
+        msDesdeInicioJvm = ManagementFactory.getRuntimeMXBean().getUptime();
+        listo = true;
+        logger.info("Servidor listo en {} ms ({} ms desde el inicio de la JVM). Etapas: {}",
+            msHastaListo, msDesdeInicioJvm, getEtapas());
+    }
+
+    public boolean isListo() {
+        return listo;
+    }
+
+    /**
+     * Milisegundos desde la creación de este objeto (inicio del arranque) hasta quedar listo, o -1
+     */
+    public long getMsHastaListo() {
+        return msHastaListo;
+    }
+
+    /**
+     * Milisegundos desde el inicio de la JVM hasta quedar listo (incluye carga de clases previa), o -1
+     */
+    public long getMsDesdeInicioJvm() {
+        return msDesdeInicioJvm;
+    }
+
+    public synchronized Map<String, Long> getEtapas() {
+        return new LinkedHashMap<>(etapas);
+    }
+
+    /**
+     * Etapas del precalentamiento que fallaron o no terminaron a tiempo
+     */
+    public synchronized Set<String> getFallidas() {
+        return new LinkedHashSet<>(fallidas);
+    }
+}
@@ -0,0 +1,76 @@
+package com.enlamano.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Modo de ejecución de hilos del servidor.
+ * Con -Dserver.threads.virtual=true y un runtime Java 21+, el pool de Jetty y los carriles
+ * hacia el BCU usan hilos virtuales. Se accede a la API por reflexión para que el mismo
+ * código siga compilando y ejecutando en Java 8.
+ */
+public final class ThreadingMode {
+
+    private static final Logger logger = LoggerFactory.getLogger(ThreadingMode.class);
+
+    private static final boolean VIRTUAL = detectarVirtual();
+
+    private ThreadingMode() {
+    }
+
+    /**
+     * Indica si se solicitaron hilos virtuales y el runtime los soporta
+     */
+    public static boolean isVirtual() {
+        return VIRTUAL;
+    }
+
+    /**
+     * Fábrica de hilos con el prefijo indicado: virtuales si el modo está activo, de plataforma (daemon) si no
+     */
+    public static ThreadFactory threadFactory(final String prefijo) {
+        if (VIRTUAL) {
+            return virtualThreadFactory(prefijo);
+        }
+        return new ThreadFactory() {
+            private final AtomicInteger contador = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, prefijo + contador.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    private static ThreadFactory virtualThreadFactory(String prefijo) {
+        try {
+            // Equivalente a Thread.ofVirtual().name(prefijo, 1).factory()
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, prefijo, 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No se pudo crear la fábrica de hilos virtuales", e);
+        }
+    }
+
+    private static boolean detectarVirtual() {
+        if (!Boolean.getBoolean("server.threads.virtual")) {
+            return false;
+        }
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            return ofVirtual != null;
+        } catch (NoSuchMethodException e) {
+            logger.warn("Hilos virtuales solicitados pero no soportados por Java {}. Se usan hilos de plataforma",
+                System.getProperty("java.version"));
+            return false;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.enlamano.server;
+
+/**
+ * Clases de prioridad del tráfico que atraviesa el gateway
+ */
+public enum TrafficClass {
+
+    /** Consultas puntuales desde la UI de NetSuite: baja latencia */
+    INTERACTIVE("interactivo"),
+
+    /** Integraciones nocturnas y procesos masivos: alto volumen, tolerantes a espera */
+    BATCH("batch");
+
+    private final String nombre;
+
+    TrafficClass(String nombre) {
+        this.nombre = nombre;
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    /**
+     * Obtiene la clase a partir de su nombre, o null si no corresponde a ninguna
+     */
+    public static TrafficClass fromNombre(String nombre) {
+        if (nombre == null) {
+            return null;
+        }
+        for (TrafficClass clase : values()) {
+            if (clase.nombre.equalsIgnoreCase(nombre.trim())) {
+                return clase;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,337 @@
+package com.enlamano.server;
+
+import org.apache.axiom.om.OMAbstractFactory;
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.soap.SOAP12Constants;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axiom.soap.SOAPFactory;
+import org.apache.axis2.AxisFault;
+import org.apache.axis2.client.OperationClient;
+import org.apache.axis2.client.ServiceClient;
+import org.apache.axis2.context.MessageContext;
+import org.apache.axis2.description.TransportOutDescription;
+import org.apache.axis2.wsdl.WSDLConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Enrutamiento de las consultas SOAP entre varios endpoints equivalentes (BCU principal,
+ * servicio alternativo o relay interno con cache).
+ * Cada endpoint lleva un EWMA de latencia y de tasa de error; se elige el de menor puntaje.
+ * La penalización por errores decae con el tiempo, así un endpoint que falló vuelve a recibir
+ * tráfico cuando deja de haber evidencia reciente en su contra.
+ * Un endpoint con varios fallos de conexión seguidos se expulsa por un tiempo creciente y,
+ * vencida la expulsión, se lo vuelve a probar con una única consulta antes de reincorporarlo.
+ * Ante un fallo de conexión la consulta se reintenta en otro endpoint.
+ */
+public class UpstreamRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpstreamRouter.class);
+
+    private final List<Endpoint> endpoints;
+    private final double alfa;
+    private final double penalizacionErrorMillis;
+    private final double vidaMediaErrorNanos;
+    private final int fallosParaExpulsar;
+    private final long expulsionBaseNanos;
+    private final long expulsionMaximaNanos;
+    private final double exploracion;
+    private final int maxIntentos;
+
+    /**
+     * @param clientes cliente SOAP de cada endpoint por URL, en orden de preferencia ante empates
+     */
+    public UpstreamRouter(Properties config, Map<String, ServiceClient> clientes) {
+        if (clientes.isEmpty()) {
+            throw new IllegalArgumentException("Se requiere al menos un endpoint");
+        }
+        List<Endpoint> lista = new ArrayList<>(clientes.size());
+        for (Map.Entry<String, ServiceClient> cliente : clientes.entrySet()) {
+            lista.add(new Endpoint(cliente.getKey(), cliente.getValue()));
+        }
+        this.endpoints = Collections.unmodifiableList(lista);
+        this.alfa = Double.parseDouble(config.getProperty("router.ewma.alpha", "0.2"));
+        this.penalizacionErrorMillis = Double.parseDouble(config.getProperty("router.error.penalty.ms", "2000"));
+        this.vidaMediaErrorNanos = TimeUnit.SECONDS.toNanos(
+            Long.parseLong(config.getProperty("router.error.halflife.seconds", "30")));
+        this.fallosParaExpulsar = Integer.parseInt(config.getProperty("router.eject.failures", "3"));
+        this.expulsionBaseNanos = TimeUnit.SECONDS.toNanos(
+            Long.parseLong(config.getProperty("router.eject.seconds", "10")));
+        this.expulsionMaximaNanos = TimeUnit.SECONDS.toNanos(
+            Long.parseLong(config.getProperty("router.eject.max.seconds", "300")));
+        this.exploracion = Double.parseDouble(config.getProperty("router.explore", "0.05"));
+        this.maxIntentos = Math.max(1, Math.min(lista.size(),
+            Integer.parseInt(config.getProperty("router.max.attempts", "2"))));
+    }
+
+    /**
+     * Envía la petición al mejor endpoint disponible, reintentando en otro ante fallos de conexión.
+     * Registra en el evento JFR el endpoint que respondió y la cantidad de reintentos.
+     */
+    public OMElement enviar(OMElement request, RegistroConsulta evento) throws Exception {
+        List<Endpoint> probados = new ArrayList<>(maxIntentos);
+        Exception ultimo = null;
+        while (probados.size() < maxIntentos) {
+            Endpoint endpoint = elegir(probados);
+            if (endpoint == null) {
+                break;
+            }
+            probados.add(endpoint);
+            long inicio = System.nanoTime();
+            try {
+                OMElement response = enviar(endpoint.serviceClient, request);
+                long latencia = System.nanoTime() - inicio;
+                endpoint.registrarExito(latencia);
+                // El limitador compara la latencia con la línea base de este endpoint
+                BcuConcurrencyLimiter.informarRtt(endpoint.url, latencia);
+                evento.endpoint = endpoint.url;
+                evento.reintentos = probados.size() - 1;
+                return response;
+            } catch (Exception e) {
+                if (!esFalloDeEndpoint(e)) {
+                    // Falla SOAP del servicio: el endpoint respondió, no se reintenta en otro
+                    endpoint.registrarExito(System.nanoTime() - inicio);
+                    evento.endpoint = endpoint.url;
+                    throw e;
+                }
+                endpoint.registrarFallo();
+                logger.warn("[{}] Fallo en endpoint {}: {}", RequestTrace.idActual(), endpoint.url, e.toString());
+                ultimo = e;
+            }
+        }
+        evento.reintentos = Math.max(0, probados.size() - 1);
+        if (ultimo == null) {
+            throw new BcuSobrecargaException("Ningún endpoint del BCU disponible ("
+                + endpoints.size() + " configurados)");
+        }
+        throw ultimo;
+    }
+
+    /**
+     * Equivale a {@link ServiceClient#sendReceive(OMElement)} pero libera la conexión de esta
+     * operación. El ServiceClient se comparte entre hilos y su cleanupTransport() libera la de
+     * la última operación creada, que con llamadas concurrentes puede ser la de otro hilo.
+     */
+    private static OMElement enviar(ServiceClient serviceClient, OMElement request) throws AxisFault {
+        SOAPFactory factory = SOAP12Constants.SOAP_ENVELOPE_NAMESPACE_URI.equals(
+            serviceClient.getOptions().getSoapVersionURI())
+            ? OMAbstractFactory.getSOAP12Factory() : OMAbstractFactory.getSOAP11Factory();
+        SOAPEnvelope sobre = factory.getDefaultEnvelope();
+        sobre.getBody().addChild(request);
+        MessageContext salida = new MessageContext();
+        salida.setEnvelope(sobre);
+
+        OperationClient operacion = serviceClient.createClient(ServiceClient.ANON_OUT_IN_OP);
+        operacion.addMessageContext(salida);
+        try {
+            operacion.execute(true);
+            SOAPEnvelope respuesta = operacion.getMessageContext(WSDLConstants.MESSAGE_LABEL_IN_VALUE).getEnvelope();
+            // Leer la respuesta completa antes de devolver la conexión al pool
+            respuesta.buildWithAttachments();
+            return respuesta.getBody().getFirstElement();
+        } finally {
+            TransportOutDescription transporte = salida.getTransportOut();
+            if (transporte != null && transporte.getSender() != null) {
+                transporte.getSender().cleanup(salida);
+            }
+        }
+    }
+
+    /**
+     * Elige el endpoint de menor puntaje entre los no probados. Un endpoint expulsado cuya
+     * expulsión venció se devuelve como sondeo (uno solo a la vez). Si todos están expulsados,
+     * se usa el que se reincorpora antes, para no rechazar consultas que podrían funcionar.
+     */
+    Endpoint elegir(List<Endpoint> excluidos) {
+        final long ahora = System.nanoTime();
+        List<Endpoint> disponibles = new ArrayList<>(endpoints.size());
+        Endpoint proximoEnVolver = null;
+        for (Endpoint endpoint : endpoints) {
+            if (excluidos.contains(endpoint)) {
+                continue;
+            }
+            if (endpoint.isExpulsado()) {
+                if (endpoint.intentarSondeo(ahora)) {
+                    return endpoint;
+                }
+                if (proximoEnVolver == null
+                        || endpoint.expulsadoHastaNanos - proximoEnVolver.expulsadoHastaNanos < 0) {
+                    proximoEnVolver = endpoint;
+                }
+                continue;
+            }
+            disponibles.add(endpoint);
+        }
+        if (disponibles.isEmpty()) {
+            return proximoEnVolver;
+        }
+        if (disponibles.size() > 1 && exploracion > 0 && ThreadLocalRandom.current().nextDouble() < exploracion) {
+            // Mantener actualizada la latencia de los endpoints que no son el preferido
+            return disponibles.get(ThreadLocalRandom.current().nextInt(disponibles.size()));
+        }
+        Endpoint mejor = disponibles.get(0);
+        double mejorPuntaje = puntaje(mejor, ahora);
+        for (int i = 1; i < disponibles.size(); i++) {
+            double candidato = puntaje(disponibles.get(i), ahora);
+            if (candidato < mejorPuntaje) {
+                mejor = disponibles.get(i);
+                mejorPuntaje = candidato;
+            }
+        }
+        return mejor;
+    }
+
+    private double puntaje(Endpoint endpoint, long ahora) {
+        double error = endpoint.errorEwma;
+        if (error > 0) {
+            error *= Math.pow(0.5, (ahora - endpoint.ultimoFalloNanos) / vidaMediaErrorNanos);
+        }
+        return endpoint.latenciaEwmaMillis + penalizacionErrorMillis * error;
+    }
+
+    /**
+     * Fallos atribuibles al endpoint (conexión, TLS, timeout o error HTTP de transporte),
+     * a diferencia de una falla SOAP devuelta por el servicio
+     */
+    static boolean esFalloDeEndpoint(Throwable e) {
+        for (Throwable causa = e; causa != null; causa = causa.getCause()) {
+            if (causa instanceof IOException) {
+                return true;
+            }
+            if (causa instanceof AxisFault && causa.getMessage() != null
+                    && causa.getMessage().startsWith("Transport error")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    public void close() {
+        for (Endpoint endpoint : endpoints) {
+            try {
+                endpoint.serviceClient.cleanup();
+            } catch (AxisFault e) {
+                logger.warn("Error cerrando cliente SOAP de {}: {}", endpoint.url, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Endpoint SOAP con su cliente y su estado de salud
+     */
+    public final class Endpoint {
+
+        private final String url;
+        private final ServiceClient serviceClient;
+        // Hilo que realiza el sondeo en curso: solo su resultado decide la reincorporación
+        private final AtomicReference<Thread> sondeo = new AtomicReference<>();
+        private final AtomicLong solicitudes = new AtomicLong();
+        private final AtomicLong fallos = new AtomicLong();
+
+        private volatile double latenciaEwmaMillis;
+        private volatile double errorEwma;
+        private volatile long ultimoFalloNanos;
+        private volatile long expulsadoHastaNanos;
+        private volatile boolean expulsado;
+        private int fallosConsecutivos;
+        private int expulsiones;
+
+        private Endpoint(String url, ServiceClient serviceClient) {
+            this.url = url;
+            this.serviceClient = serviceClient;
+        }
+
+        public boolean isExpulsado() {
+            return expulsado;
+        }
+
+        boolean intentarSondeo(long ahora) {
+            return ahora - expulsadoHastaNanos >= 0 && sondeo.compareAndSet(null, Thread.currentThread());
+        }
+
+        private boolean esSondeoPropio() {
+            return sondeo.get() == Thread.currentThread();
+        }
+
+        synchronized void registrarExito(long latenciaNanos) {
+            solicitudes.incrementAndGet();
+            double latenciaMillis = TimeUnit.NANOSECONDS.toMicros(latenciaNanos) / 1000.0;
+            if (solicitudes.get() - fallos.get() == 1) {
+                latenciaEwmaMillis = latenciaMillis;
+            } else {
+                latenciaEwmaMillis += alfa * (latenciaMillis - latenciaEwmaMillis);
+            }
+            errorEwma += alfa * (0 - errorEwma);
+            fallosConsecutivos = 0;
+            // Una consulta que llegó por ser el único endpoint restante no lo reincorpora
+            if (expulsado && esSondeoPropio()) {
+                expulsado = false;
+                expulsiones = 0;
+                sondeo.set(null);
+                logger.info("Endpoint {} reincorporado tras sondeo exitoso", url);
+            }
+        }
+
+        synchronized void registrarFallo() {
+            // La latencia de un fallo (rechazo inmediato o timeout) no representa al endpoint
+            solicitudes.incrementAndGet();
+            fallos.incrementAndGet();
+            errorEwma += alfa * (1 - errorEwma);
+            ultimoFalloNanos = System.nanoTime();
+            fallosConsecutivos++;
+            if (expulsado) {
+                if (esSondeoPropio()) {
+                    // Sondeo fallido: nueva expulsión, el doble de larga, antes de admitir otro sondeo
+                    expulsar();
+                    sondeo.set(null);
+                }
+            } else if (fallosConsecutivos >= fallosParaExpulsar) {
+                expulsar();
+            }
+        }
+
+        private void expulsar() {
+            long duracion = Math.min(expulsionMaximaNanos, expulsionBaseNanos << Math.min(expulsiones, 16));
+            expulsiones++;
+            expulsadoHastaNanos = System.nanoTime() + duracion;
+            expulsado = true;
+            logger.warn("Endpoint {} expulsado por {} s tras {} fallos consecutivos",
+                url, TimeUnit.NANOSECONDS.toSeconds(duracion), fallosConsecutivos);
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public double getLatenciaEwmaMillis() {
+            return latenciaEwmaMillis;
+        }
+
+        public double getErrorEwma() {
+            return errorEwma;
+        }
+
+        public long getSolicitudes() {
+            return solicitudes.get();
+        }
+
+        public long getFallos() {
+            return fallos.get();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.enlamano.server;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool de Jetty que ejecuta cada tarea en un hilo virtual nuevo.
+ * Los hilos virtuales son baratos, por lo que no se reutilizan ni se limita su cantidad.
+ */
+public class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+
+    private final ThreadFactory threadFactory = ThreadingMode.threadFactory("jetty-vt-");
+    private final AtomicInteger activos = new AtomicInteger();
+    private final Object terminado = new Object();
+
+    @Override
+    public void execute(final Runnable tarea) {
+        if (!isRunning() && !isStarting()) {
+            throw new RejectedExecutionException("Pool detenido");
+        }
+        activos.incrementAndGet();
+        threadFactory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    tarea.run();
+                } finally {
+                    activos.decrementAndGet();
+                }
+            }
+        }).start();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        synchronized (terminado) {
+            terminado.notifyAll();
+        }
+        super.doStop();
+    }
+
+    @Override
+    public void join() throws InterruptedException {
+        synchronized (terminado) {
+            while (isRunning() || isStarting()) {
+                terminado.wait();
+            }
+        }
+    }
+
+    @Override
+    public int getThreads() {
+        return activos.get();
+    }
+
+    @Override
+    public int getIdleThreads() {
+        return 0;
+    }
+
+    @Override
+    public boolean isLowOnThreads() {
+        return false;
+    }
+}
@@ -0,0 +1,98 @@
+package com.enlamano.server;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AsyncBatchAppenderTest {
+
+    @Rule
+    public TemporaryFolder carpeta = new TemporaryFolder();
+
+    private final LoggerContext context = new LoggerContext();
+    private final CountDownLatch codificando = new CountDownLatch(1);
+    private final CountDownLatch liberar = new CountDownLatch(1);
+
+    @After
+    public void detener() {
+        liberar.countDown();
+        context.stop();
+    }
+
+    @Test
+    public void conBufferLlenoSoloSeDescartanInfoEInferiores() throws Exception {
+        File archivo = carpeta.newFile("app.log");
+        AsyncBatchAppender appender = new AsyncBatchAppender();
+        appender.setContext(context);
+        appender.setEncoder(encoderBloqueante());
+        appender.setFile(archivo.getPath());
+        appender.setQueueSize(1);
+        appender.setMaxBlockMillis(20);
+        appender.start();
+        Logger logger = context.getLogger("com.enlamano.server.Prueba");
+        logger.addAppender(appender);
+
+        // El escritor de fondo queda detenido codificando el primer evento
+        logger.info("bloquear");
+        assertTrue(codificando.await(5, TimeUnit.SECONDS));
+        logger.info("i1");
+        logger.info("i2");
+        logger.debug("d1");
+        logger.warn("w1");
+        logger.error("e1");
+
+        // WARN y ERROR se escriben desde el hilo que los emite sin esperar al escritor
+        assertEquals(Arrays.asList("w1", "e1"), lineas(archivo));
+        assertEquals(2, appender.getDescartados());
+
+        liberar.countDown();
+        context.stop();
+        List<String> lineas = lineas(archivo);
+        assertEquals(Arrays.asList("w1", "e1",
+            "[log-writer] WARN " + AsyncBatchAppender.class.getName()
+                + " - 2 eventos de log INFO o inferiores descartados por buffer lleno",
+            "bloquear", "i1"), lineas);
+    }
+
+    private PatternLayoutEncoder encoderBloqueante() {
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder() {
+            @Override
+            public byte[] encode(ILoggingEvent event) {
+                if ("bloquear".equals(event.getMessage())) {
+                    codificando.countDown();
+                    try {
+                        liberar.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.encode(event);
+            }
+        };
+        encoder.setContext(context);
+        encoder.setPattern("%msg%n");
+        encoder.setCharset(StandardCharsets.UTF_8);
+        encoder.start();
+        return encoder;
+    }
+
+    private static List<String> lineas(File archivo) throws Exception {
+        return Files.readAllLines(archivo.toPath(), StandardCharsets.UTF_8);
+    }
+}
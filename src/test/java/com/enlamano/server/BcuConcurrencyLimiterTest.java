@@ -0,0 +1,266 @@
+package com.enlamano.server;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BcuConcurrencyLimiterTest {
+
+    private final ExecutorService hilos = Executors.newCachedThreadPool();
+
+    @After
+    public void detener() {
+        hilos.shutdownNow();
+    }
+
+    @Test
+    public void fallosRapidosNoBajanElRttMinimoNiElLimite() throws Exception {
+        BcuConcurrencyLimiter limiter = limiter(10, 1, 100);
+
+        limiter.ejecutar(informando("", 20));
+        double rttMinimo = limiter.getRttMinimoMillis();
+        for (int i = 0; i < 5; i++) {
+            try {
+                limiter.ejecutar(fallando(new IOException("Connection refused")));
+                fail();
+            } catch (IOException e) {
+                // esperado
+            }
+        }
+        assertEquals(rttMinimo, limiter.getRttMinimoMillis(), 0.0);
+
+        int limite = limiter.getLimite();
+        limiter.ejecutar(informando("", 20));
+        assertTrue(limiter.getLimite() >= limite);
+    }
+
+    @Test
+    public void latenciaElevadaReduceElLimite() throws Exception {
+        BcuConcurrencyLimiter limiter = limiter(10, 1, 100);
+
+        limiter.ejecutar(informando("http://bcu", 5));
+        limiter.ejecutar(informando("http://bcu", 60));
+        assertEquals(9, limiter.getLimite());
+    }
+
+    @Test
+    public void cadaEndpointTieneSuPropiaLineaBase() throws Exception {
+        BcuConcurrencyLimiter limiter = limiter(10, 1, 100);
+
+        limiter.ejecutar(informando("http://rapido", 5));
+        limiter.ejecutar(informando("http://lento", 60));
+        limiter.ejecutar(informando("http://lento", 60));
+        assertEquals(10, limiter.getLimite());
+        assertEquals(5, limiter.getRttMinimoMillis(), 0.5);
+
+        // El mismo RTT sí es una degradación para el endpoint rápido
+        limiter.ejecutar(informando("http://rapido", 60));
+        assertEquals(9, limiter.getLimite());
+    }
+
+    @Test
+    public void reduceALoSumoUnaVezPorRtt() throws Exception {
+        // RTT de referencia de 1 s: las señales siguientes caen dentro de la misma ventana
+        BcuConcurrencyLimiter limiter = limiter(10, 1, 100);
+        limiter.ejecutar(informando("http://bcu", 1000));
+        for (int i = 0; i < 3; i++) {
+            limiter.ejecutar(informando("http://bcu", 3000));
+        }
+        for (int i = 0; i < 3; i++) {
+            try {
+                limiter.ejecutar(fallando(new SocketTimeoutException("Read timed out")));
+                fail();
+            } catch (SocketTimeoutException e) {
+                // esperado
+            }
+        }
+        assertEquals(9, limiter.getLimite());
+        assertEquals(3, limiter.getCaidas());
+
+        // Con RTT de referencia de 1 ms, pasada la ventana se vuelve a reducir
+        BcuConcurrencyLimiter rapido = limiter(10, 1, 100);
+        rapido.ejecutar(informando("http://bcu", 1));
+        rapido.ejecutar(informando("http://bcu", 10));
+        assertEquals(9, rapido.getLimite());
+        Thread.sleep(5);
+        rapido.ejecutar(informando("http://bcu", 10));
+        assertEquals(8, rapido.getLimite());
+    }
+
+    @Test
+    public void encolaHastaElMaximoYLuegoDescarta() throws Exception {
+        Properties config = config(1, 1, 1);
+        config.setProperty("limiter.queue.max", "1");
+        config.setProperty("limiter.queue.timeout.ms", "200");
+        BcuConcurrencyLimiter limiter = new BcuConcurrencyLimiter(config);
+        CountDownLatch liberar = new CountDownLatch(1);
+
+        Future<String> enVuelo = enHilo(limiter, TrafficClass.INTERACTIVE, bloqueando(liberar));
+        esperar(limiter, 1, 0);
+        Future<String> enCola = enHilo(limiter, TrafficClass.INTERACTIVE, informando("http://bcu", 1));
+        esperar(limiter, 1, 1);
+
+        // Cola llena: se descarta sin esperar
+        try {
+            limiter.ejecutar(informando("http://bcu", 1));
+            fail();
+        } catch (BcuSobrecargaException e) {
+            assertEquals(1, limiter.getRechazadas());
+        }
+
+        // La consulta en cola se descarta al agotar su espera
+        try {
+            enCola.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof BcuSobrecargaException);
+        }
+        assertEquals(2, limiter.getRechazadas());
+        assertEquals(0, limiter.getEnCola());
+
+        liberar.countDown();
+        assertEquals("ok", enVuelo.get(5, TimeUnit.SECONDS));
+        assertEquals(1, limiter.getCompletadas());
+    }
+
+    @Test
+    public void atiendeInteractivasEnEsperaAntesQueLote() throws Exception {
+        BcuConcurrencyLimiter limiter = limiter(1, 1, 1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        final List<TrafficClass> orden = Collections.synchronizedList(new ArrayList<TrafficClass>());
+
+        Future<String> enVuelo = enHilo(limiter, TrafficClass.INTERACTIVE, bloqueando(liberar));
+        esperar(limiter, 1, 0);
+        // El lote llega primero a la cola
+        Future<String> lote = enHilo(limiter, TrafficClass.BATCH, anotando(orden, TrafficClass.BATCH));
+        esperar(limiter, 1, 1);
+        Future<String> interactiva = enHilo(limiter, TrafficClass.INTERACTIVE,
+            anotando(orden, TrafficClass.INTERACTIVE));
+        esperar(limiter, 1, 2);
+
+        liberar.countDown();
+        enVuelo.get(5, TimeUnit.SECONDS);
+        interactiva.get(5, TimeUnit.SECONDS);
+        lote.get(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList(TrafficClass.INTERACTIVE, TrafficClass.BATCH), orden);
+    }
+
+    @Test
+    public void elLoteOcupaComoMaximoSuFraccionDelLimite() throws Exception {
+        Properties config = config(10, 10, 10);
+        config.setProperty("limiter.batch.share", "0.5");
+        BcuConcurrencyLimiter limiter = new BcuConcurrencyLimiter(config);
+        CountDownLatch liberar = new CountDownLatch(1);
+
+        List<Future<String>> lotes = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            lotes.add(enHilo(limiter, TrafficClass.BATCH, bloqueando(liberar)));
+        }
+        // 5 de 10 en vuelo; el sexto espera aunque haya lugar bajo el límite
+        esperar(limiter, 5, 1);
+
+        // Una interactiva entra sin esperar
+        Future<String> interactiva = enHilo(limiter, TrafficClass.INTERACTIVE, bloqueando(liberar));
+        esperar(limiter, 6, 1);
+
+        liberar.countDown();
+        interactiva.get(5, TimeUnit.SECONDS);
+        for (Future<String> lote : lotes) {
+            assertEquals("ok", lote.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(0, limiter.getRechazadas());
+    }
+
+    private static BcuConcurrencyLimiter limiter(int inicial, int minimo, int maximo) {
+        return new BcuConcurrencyLimiter(config(inicial, minimo, maximo));
+    }
+
+    private static Properties config(int inicial, int minimo, int maximo) {
+        Properties config = new Properties();
+        config.setProperty("limiter.initial", String.valueOf(inicial));
+        config.setProperty("limiter.min", String.valueOf(minimo));
+        config.setProperty("limiter.max", String.valueOf(maximo));
+        config.setProperty("limiter.queue.timeout.ms", "5000");
+        return config;
+    }
+
+    private Future<String> enHilo(final BcuConcurrencyLimiter limiter, final TrafficClass clase,
+                                  final Callable<String> llamada) {
+        return hilos.submit(new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return limiter.ejecutar(clase, llamada);
+            }
+        });
+    }
+
+    private static void esperar(BcuConcurrencyLimiter limiter, int enVuelo, int enCola) throws InterruptedException {
+        long limite = System.currentTimeMillis() + 5000;
+        while ((limiter.getEnVuelo() != enVuelo || limiter.getEnCola() != enCola)
+                && System.currentTimeMillis() < limite) {
+            Thread.sleep(1);
+        }
+        assertEquals(enVuelo, limiter.getEnVuelo());
+        assertEquals(enCola, limiter.getEnCola());
+    }
+
+    // Llamada que informa su RTT y endpoint como lo hace el router
+    private static Callable<String> informando(final String origen, final long millis) {
+        return new Callable<String>() {
+            @Override
+            public String call() {
+                BcuConcurrencyLimiter.informarRtt(origen, TimeUnit.MILLISECONDS.toNanos(millis));
+                return "ok";
+            }
+        };
+    }
+
+    private static Callable<String> fallando(final Exception e) {
+        return new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                throw e;
+            }
+        };
+    }
+
+    private static Callable<String> bloqueando(final CountDownLatch liberar) {
+        return new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                liberar.await();
+                BcuConcurrencyLimiter.informarRtt("http://bcu", TimeUnit.MILLISECONDS.toNanos(1));
+                return "ok";
+            }
+        };
+    }
+
+    private static Callable<String> anotando(final List<TrafficClass> orden, final TrafficClass clase) {
+        return new Callable<String>() {
+            @Override
+            public String call() {
+                orden.add(clase);
+                BcuConcurrencyLimiter.informarRtt("http://bcu", TimeUnit.MILLISECONDS.toNanos(1));
+                return "ok";
+            }
+        };
+    }
+}
@@ -0,0 +1,183 @@
+package com.enlamano.server;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.time.LocalDate;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Consultas GET al gateway montado en Jetty, contra un BCU local ({@link SoapStub})
+ */
+public class BcuGatewayServletTest {
+
+    private final Logger slowLogger = (Logger) LoggerFactory.getLogger("com.enlamano.server.slow");
+    private final ListAppender<ILoggingEvent> lentas = new ListAppender<>();
+
+    private SoapStub bcu;
+    private BcuSoapClient client;
+    private PriorityLanes priorityLanes;
+    private Server server;
+
+    @Before
+    public void iniciar() throws Exception {
+        lentas.setContext(slowLogger.getLoggerContext());
+        lentas.start();
+        slowLogger.addAppender(lentas);
+
+        bcu = new SoapStub(39.5, 1);
+        Properties config = new Properties();
+        config.setProperty("bcu.endpoints", bcu.getUrl());
+        config.setProperty("connection.timeout", "1000");
+        config.setProperty("socket.timeout", "5000");
+        config.setProperty("router.explore", "0");
+        // Umbral 0: toda petición se registra como lenta
+        config.setProperty("trace.slow.threshold.ms", "0");
+        client = new BcuSoapClient(config);
+        priorityLanes = new PriorityLanes(config);
+
+        server = new Server(0);
+        ServletContextHandler context = new ServletContextHandler();
+        ServletHolder holder = new ServletHolder(new BcuGatewayServlet(client, priorityLanes));
+        holder.setAsyncSupported(true);
+        context.addServlet(holder, "/api/bcu/*");
+        server.setHandler(context);
+        server.start();
+    }
+
+    @After
+    public void detener() throws Exception {
+        slowLogger.detachAppender(lentas);
+        // Dejar terminar las respuestas en curso antes de cerrar las conexiones
+        priorityLanes.shutdown();
+        for (PriorityLanes.Carril carril : priorityLanes.getCarriles()) {
+            while (carril.getHilosActivos() > 0) {
+                Thread.sleep(5);
+            }
+        }
+        server.stop();
+        client.close();
+        bcu.detener();
+    }
+
+    @Test
+    public void informaEtapasEnServerTimingYRegistraLaPeticionLenta() throws Exception {
+        HttpURLConnection conexion = get("/api/bcu/cotizacion?moneda=USD&fecha=2020-03-02");
+        conexion.setRequestProperty(RequestTrace.HEADER_REQUEST_ID, "ns-42.a_b");
+        assertEquals(200, conexion.getResponseCode());
+        assertEquals("ns-42.a_b", conexion.getHeaderField(RequestTrace.HEADER_REQUEST_ID));
+
+        String serverTiming = conexion.getHeaderField("Server-Timing");
+        assertNotNull(serverTiming);
+        assertTrue(serverTiming, serverTiming.matches("parse;dur=\\d+\\.\\d{2}, .*bcu;dur=\\d+\\.\\d{2}, .*total;dur=\\d+\\.\\d{2}"));
+
+        // Con Content-Length la respuesta llega al cliente antes de que el carril termine
+        esperarRegistros(1);
+        assertEquals(1, lentas.list.size());
+        String mensaje = lentas.list.get(0).getFormattedMessage();
+        assertTrue(mensaje, mensaje.startsWith("[ns-42.a_b] Petición lenta /api/bcu/cotizacion (prioridad "));
+        assertTrue(mensaje, mensaje.contains(" bcu="));
+    }
+
+    @Test
+    public void reemplazaUnRequestIdInvalido() throws Exception {
+        StringBuilder largo = new StringBuilder();
+        for (int i = 0; i <= RequestTrace.MAX_ID; i++) {
+            largo.append('a');
+        }
+        for (String invalido : new String[] {"id con espacios", "xé", "a<script>", largo.toString()}) {
+            HttpURLConnection conexion = get("/api/bcu/cotizacion?moneda=USD&fecha=2020-03-03");
+            conexion.setRequestProperty(RequestTrace.HEADER_REQUEST_ID, invalido);
+            assertEquals(200, conexion.getResponseCode());
+            String id = conexion.getHeaderField(RequestTrace.HEADER_REQUEST_ID);
+            assertNotEquals(invalido, id);
+            assertTrue(id, RequestTrace.idValido(id));
+        }
+    }
+
+    @Test
+    public void respondeNoModificadoSiIfNoneMatchCoincide() throws Exception {
+        String ruta = "/api/bcu/cotizacion?moneda=USD&fecha=2020-03-04";
+        HttpURLConnection primera = get(ruta);
+        assertEquals(200, primera.getResponseCode());
+        String etag = primera.getHeaderField("ETag");
+        assertNotNull(etag);
+
+        for (String ifNoneMatch : new String[] {etag, "W/" + etag, "\"otro\", " + etag, "\"otro\", W/" + etag, "*"}) {
+            HttpURLConnection conexion = get(ruta);
+            conexion.setRequestProperty("If-None-Match", ifNoneMatch);
+            assertEquals(ifNoneMatch, 304, conexion.getResponseCode());
+            assertEquals(etag, conexion.getHeaderField("ETag"));
+        }
+
+        HttpURLConnection distinto = get(ruta);
+        distinto.setRequestProperty("If-None-Match", "\"otro\", W/\"mas\"");
+        assertEquals(200, distinto.getResponseCode());
+    }
+
+    @Test
+    public void elEtagDependeSoloDeLaRepresentacion() throws Exception {
+        String ruta = "/api/bcu/cotizacion?moneda=USD&fecha=2020-03-05";
+        String json = etag(ruta, "application/json");
+        // Misma cotización y formato: mismo ETag aunque cambie la hora de consulta
+        Thread.sleep(5);
+        assertEquals(json, etag(ruta, "application/json"));
+        // Otro formato u otra cotización: otro ETag
+        String cbor = etag(ruta, "application/cbor");
+        assertNotEquals(json, cbor);
+        assertEquals(cbor, etag(ruta, "application/cbor"));
+        assertNotEquals(json, etag("/api/bcu/cotizacion?moneda=USD&fecha=2020-03-06", "application/json"));
+    }
+
+    @Test
+    public void soloLosDiasPasadosSonInmutables() throws Exception {
+        String hoy = LocalDate.ofEpochDay(ClaveCotizacion.hoy()).toString();
+        String ayer = LocalDate.ofEpochDay(ClaveCotizacion.hoy() - 1).toString();
+
+        HttpURLConnection pasado = get("/api/bcu/cotizacion?moneda=USD&fecha=" + ayer);
+        assertEquals(200, pasado.getResponseCode());
+        assertEquals("public, max-age=31536000, immutable", pasado.getHeaderField("Cache-Control"));
+
+        HttpURLConnection delDia = get("/api/bcu/cotizacion?moneda=USD&fecha=" + hoy);
+        assertEquals(200, delDia.getResponseCode());
+        assertEquals("public, max-age=60", delDia.getHeaderField("Cache-Control"));
+    }
+
+    private String etag(String ruta, String accept) throws Exception {
+        HttpURLConnection conexion = get(ruta);
+        conexion.setRequestProperty("Accept", accept);
+        assertEquals(200, conexion.getResponseCode());
+        return conexion.getHeaderField("ETag");
+    }
+
+    private void esperarRegistros(int cantidad) throws InterruptedException {
+        long limite = System.currentTimeMillis() + 5000;
+        while (lentas.list.size() < cantidad && System.currentTimeMillis() < limite) {
+            Thread.sleep(5);
+        }
+    }
+
+    private HttpURLConnection get(String ruta) throws Exception {
+        int puerto = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+        HttpURLConnection conexion = (HttpURLConnection) new URL("http://127.0.0.1:" + puerto + ruta).openConnection();
+        conexion.setConnectTimeout(2000);
+        conexion.setReadTimeout(10000);
+        return conexion;
+    }
+}
@@ -0,0 +1,78 @@
+package com.enlamano.server;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class ClaveCotizacionTest {
+
+    @Before
+    public void configurar() {
+        Properties config = new Properties();
+        config.setProperty("monedas.alias", "2225:USD,1111:EUR");
+        Monedas.configurar(config);
+    }
+
+    @Test
+    public void diaEpochCoincideConLocalDateEnAmbosFormatos() {
+        DateTimeFormatter barras = DateTimeFormatter.ofPattern("dd/MM/uuuu");
+        for (LocalDate fecha = LocalDate.of(1896, 1, 1); fecha.getYear() < 2105; fecha = fecha.plusDays(1)) {
+            assertEquals(fecha.toString(), fecha.toEpochDay(), ClaveCotizacion.diaEpoch(fecha.toString()));
+            assertEquals(fecha.toEpochDay(), ClaveCotizacion.diaEpoch(fecha.format(barras)));
+        }
+        assertEquals(LocalDate.of(0, 1, 1).toEpochDay(), ClaveCotizacion.diaEpoch("0000-01-01"));
+        assertEquals(LocalDate.of(9999, 12, 31).toEpochDay(), ClaveCotizacion.diaEpoch("31/12/9999"));
+    }
+
+    @Test
+    public void bisiestos() {
+        assertEquals(LocalDate.of(2024, 2, 29).toEpochDay(), ClaveCotizacion.diaEpoch("2024-02-29"));
+        assertEquals(LocalDate.of(2000, 2, 29).toEpochDay(), ClaveCotizacion.diaEpoch("29/02/2000"));
+        assertEquals(ClaveCotizacion.SIN_FECHA, ClaveCotizacion.diaEpoch("2023-02-29"));
+        assertEquals(ClaveCotizacion.SIN_FECHA, ClaveCotizacion.diaEpoch("29/02/1900"));
+        assertEquals(ClaveCotizacion.SIN_FECHA, ClaveCotizacion.diaEpoch("2100-02-29"));
+    }
+
+    @Test
+    public void fechasInvalidas() {
+        String[] invalidas = {null, "", "2024-1-05", "2024-13-01", "2024-00-10", "2024-01-00", "31/04/2024",
+            "2024/01/05", "05-01-2024", "aaaa-bb-cc", "2024-01-5 ", "+024-01-05", "2024-01-05T00"};
+        for (String fecha : invalidas) {
+            assertEquals(fecha, ClaveCotizacion.SIN_FECHA, ClaveCotizacion.diaEpoch(fecha));
+        }
+    }
+
+    @Test
+    public void aliasYFormatosDistintosProducenLaMismaClave() {
+        long clave = ClaveCotizacion.clave("USD", "2024-01-05");
+        assertEquals(clave, ClaveCotizacion.clave("2225", "05/01/2024"));
+        assertEquals(clave, ClaveCotizacion.clave(" usd ", "2024-01-05"));
+        assertNotEquals(clave, ClaveCotizacion.clave("EUR", "2024-01-05"));
+        assertNotEquals(clave, ClaveCotizacion.clave("USD", "2024-01-06"));
+
+        assertEquals("USD", Monedas.codigo(ClaveCotizacion.moneda(clave)));
+        assertEquals(LocalDate.of(2024, 1, 5).toEpochDay(), ClaveCotizacion.dia(clave));
+    }
+
+    @Test
+    public void extremosDelRangoDeFechas() {
+        long primera = ClaveCotizacion.clave("ZZZZZZZZ", "0000-01-01");
+        long ultima = ClaveCotizacion.clave("ZZZZZZZZ", "9999-12-31");
+        assertEquals(LocalDate.of(0, 1, 1).toEpochDay(), ClaveCotizacion.dia(primera));
+        assertEquals(LocalDate.of(9999, 12, 31).toEpochDay(), ClaveCotizacion.dia(ultima));
+        assertEquals("ZZZZZZZZ", Monedas.codigo(ClaveCotizacion.moneda(ultima)));
+    }
+
+    @Test
+    public void monedaOFechaNoReconocidaNoTieneClave() {
+        assertEquals(ClaveCotizacion.INVALIDA, ClaveCotizacion.clave("US$", "2024-01-05"));
+        assertEquals(ClaveCotizacion.INVALIDA, ClaveCotizacion.clave("USDOLARES", "2024-01-05"));
+        assertEquals(ClaveCotizacion.INVALIDA, ClaveCotizacion.clave("USD", "2024-02-30"));
+    }
+}
@@ -0,0 +1,43 @@
+package com.enlamano.server;
+
+import org.junit.Test;
+
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class DiagnosticoTest {
+
+    @Test
+    public void usaJfrSoloSiLaJvmYElBuildLoIncluyen() {
+        boolean conJfr = existe("jdk.jfr.FlightRecorder") && existe("com.enlamano.server.DiagnosticoJfr");
+        assertEquals(conJfr ? "DiagnosticoJfr" : "Diagnostico", Diagnostico.get().getClass().getSimpleName());
+    }
+
+    @Test
+    public void sinJfrLosRegistrosNoTienenEfecto() {
+        Diagnostico sinJfr = new Diagnostico();
+        RegistroConsulta consulta = sinJfr.consulta();
+        consulta.iniciar();
+        assertFalse(consulta.habilitado());
+        assertFalse(consulta.terminar());
+        RegistroPeticion peticion = sinJfr.peticion();
+        peticion.iniciar();
+        assertFalse(peticion.terminar());
+
+        Properties config = new Properties();
+        config.setProperty("admin.token", "secreto");
+        assertNull(sinJfr.adminServlet(config));
+    }
+
+    private static boolean existe(String clase) {
+        try {
+            Class.forName(clase);
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.enlamano.server;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ErrorRateLimitFilterTest {
+
+    @Rule
+    public TemporaryFolder carpeta = new TemporaryFolder();
+
+    private LoggerContext context;
+    private ErrorRateLimitFilter filtro;
+    private ListAppender<ILoggingEvent> eventos;
+    private Logger logger;
+
+    @Before
+    public void configurar() {
+        context = new LoggerContext();
+        filtro = new ErrorRateLimitFilter();
+        filtro.setContext(context);
+        filtro.setWindowMillis(200);
+        filtro.setMaxPerWindow(2);
+        filtro.start();
+        context.addTurboFilter(filtro);
+
+        eventos = new ListAppender<>();
+        eventos.setContext(context);
+        eventos.start();
+        context.getLogger(Logger.ROOT_LOGGER_NAME).addAppender(eventos);
+        logger = context.getLogger("com.enlamano.server.Prueba");
+    }
+
+    @After
+    public void detener() {
+        context.stop();
+    }
+
+    @Test
+    public void agrupaPorLaExcepcionPasadaComoUltimoParametro() {
+        for (int i = 0; i < 5; i++) {
+            logger.error("Fallo en {}", "USD", new IOException("caído"));
+            logger.error("Fallo en {}", "USD", new SocketTimeoutException("lento"));
+        }
+        // Dos por cada tipo de excepción, no dos en total
+        assertEquals(4, mensajes().size());
+        assertEquals(IOException.class.getName(), eventos.list.get(0).getThrowableProxy().getClassName());
+    }
+
+    @Test
+    public void informaLosSuprimidosAlVencerLaVentanaSinNuevosEventos() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            logger.warn("Endpoint caído");
+        }
+        assertEquals(2, mensajes().size());
+
+        long limite = System.currentTimeMillis() + 3000;
+        while (mensajes().size() < 3 && System.currentTimeMillis() < limite) {
+            Thread.sleep(20);
+        }
+        assertEquals("3 eventos repetidos suprimidos en com.enlamano.server.Prueba: Endpoint caído",
+            mensajes().get(2));
+    }
+
+    @Test
+    public void vaciarInformaLosPendientes() {
+        filtro.setWindowMillis(60000);
+        for (int i = 0; i < 4; i++) {
+            logger.warn("Endpoint caído");
+        }
+        filtro.vaciar();
+        assertEquals(3, mensajes().size());
+        assertEquals("2 eventos repetidos suprimidos en com.enlamano.server.Prueba: Endpoint caído",
+            mensajes().get(2));
+    }
+
+    @Test
+    public void alDetenerElAppenderSeEscribenLosPendientes() throws Exception {
+        File archivo = carpeta.newFile("app.log");
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern("%msg%n");
+        encoder.setCharset(StandardCharsets.UTF_8);
+        encoder.start();
+        AsyncBatchAppender appender = new AsyncBatchAppender();
+        appender.setContext(context);
+        appender.setEncoder(encoder);
+        appender.setFile(archivo.getPath());
+        appender.start();
+        context.getLogger(Logger.ROOT_LOGGER_NAME).addAppender(appender);
+
+        filtro.setWindowMillis(60000);
+        for (int i = 0; i < 5; i++) {
+            logger.warn("Endpoint caído");
+        }
+        context.stop();
+
+        List<String> lineas = Files.readAllLines(archivo.toPath(), StandardCharsets.UTF_8);
+        assertEquals(3, lineas.size());
+        assertEquals("3 eventos repetidos suprimidos en com.enlamano.server.Prueba: Endpoint caído", lineas.get(2));
+    }
+
+    private List<String> mensajes() {
+        List<String> mensajes = new ArrayList<>();
+        for (ILoggingEvent evento : new ArrayList<>(eventos.list)) {
+            mensajes.add(evento.getFormattedMessage());
+        }
+        return mensajes;
+    }
+}
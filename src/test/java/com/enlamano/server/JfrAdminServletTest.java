@@ -0,0 +1,56 @@
+package com.enlamano.server;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Properties;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class JfrAdminServletTest {
+
+    private static final String JFC_VACIO = "<?xml version=\"1.0\"?><configuration version=\"2.0\"/>";
+
+    @Rule
+    public TemporaryFolder carpeta = new TemporaryFolder();
+
+    @Test
+    public void sinTokenNoSeExpone() {
+        assertNull(JfrAdminServlet.crear(new Properties()));
+    }
+
+    @Test
+    public void soloPerfilesIncorporadosOArchivosDelDirectorio() throws Exception {
+        File perfiles = carpeta.newFolder("perfiles");
+        Files.write(perfiles.toPath().resolve("propio.jfc"), JFC_VACIO.getBytes(StandardCharsets.UTF_8));
+        Files.createFile(carpeta.getRoot().toPath().resolve("fuera.jfc"));
+
+        Properties config = new Properties();
+        config.setProperty("admin.token", "secreto");
+        config.setProperty("admin.jfr.profiles.dir", perfiles.getPath());
+        JfrAdminServlet servlet = JfrAdminServlet.crear(config);
+
+        assertNotNull(servlet.configuracion("default"));
+        assertNotNull(servlet.configuracion("profile"));
+        assertNotNull(servlet.configuracion("propio.jfc"));
+        assertNull(servlet.configuracion("../fuera.jfc"));
+        assertNull(servlet.configuracion(carpeta.getRoot().toPath().resolve("fuera.jfc").toString()));
+        assertNull(servlet.configuracion("inexistente.jfc"));
+        assertNull(servlet.configuracion("propio.xml"));
+    }
+
+    @Test
+    public void sinDirectorioSoloPerfilesIncorporados() throws Exception {
+        Properties config = new Properties();
+        config.setProperty("admin.token", "secreto");
+        JfrAdminServlet servlet = JfrAdminServlet.crear(config);
+
+        assertNotNull(servlet.configuracion("default"));
+        assertNull(servlet.configuracion("propio.jfc"));
+    }
+}
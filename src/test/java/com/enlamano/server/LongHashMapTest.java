@@ -0,0 +1,98 @@
+package com.enlamano.server;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LongHashMapTest {
+
+    // Posición ideal en una tabla de 16 lugares (la capacidad inicial de LongHashMap(5))
+    private static int ideal(long clave) {
+        return (int) ((clave * 0x9E3779B97F4A7C15L) >>> 60);
+    }
+
+    private static List<Long> clavesConIdeal(int posicion, int cantidad) {
+        List<Long> claves = new ArrayList<>();
+        for (long clave = 1; claves.size() < cantidad; clave++) {
+            if (ideal(clave) == posicion) {
+                claves.add(clave);
+            }
+        }
+        return claves;
+    }
+
+    @Test
+    public void borrarDesplazaHaciaAtrasAtravesandoElFinDeLaTabla() {
+        // a, b y c quieren el último lugar: b y c dan la vuelta a los lugares 0 y 1; d quiere el 0 y queda en el 2
+        List<Long> alFinal = clavesConIdeal(15, 3);
+        long a = alFinal.get(0);
+        long b = alFinal.get(1);
+        long c = alFinal.get(2);
+        long d = clavesConIdeal(0, 1).get(0);
+        // e quiere el 3 y no debe moverse al lugar liberado
+        long e = clavesConIdeal(3, 1).get(0);
+
+        LongHashMap<String> mapa = new LongHashMap<>(5);
+        mapa.put(a, "a");
+        mapa.put(b, "b");
+        mapa.put(c, "c");
+        mapa.put(d, "d");
+        mapa.put(e, "e");
+
+        assertEquals("a", mapa.remove(a));
+        assertNull(mapa.get(a));
+        assertEquals("b", mapa.get(b));
+        assertEquals("c", mapa.get(c));
+        assertEquals("d", mapa.get(d));
+        assertEquals("e", mapa.get(e));
+
+        assertEquals("c", mapa.remove(c));
+        assertEquals("b", mapa.get(b));
+        assertEquals("d", mapa.get(d));
+        assertEquals("e", mapa.get(e));
+        assertEquals(3, mapa.size());
+        assertNull(mapa.remove(c));
+    }
+
+    @Test
+    public void redimensionarConservaTodasLasEntradas() {
+        LongHashMap<Long> mapa = new LongHashMap<>(1);
+        for (long clave = -500; clave < 1500; clave++) {
+            assertNull(mapa.put(clave, clave * 3));
+        }
+        assertEquals(2000, mapa.size());
+        for (long clave = -500; clave < 1500; clave++) {
+            assertEquals(Long.valueOf(clave * 3), mapa.get(clave));
+        }
+        assertNull(mapa.get(1500));
+        assertEquals(Long.valueOf(0), mapa.put(0, 7L));
+        assertEquals(2000, mapa.size());
+    }
+
+    @Test
+    public void coincideConHashMapEnOperacionesAleatorias() {
+        Random random = new Random(42);
+        LongHashMap<Integer> mapa = new LongHashMap<>(4);
+        Map<Long, Integer> esperado = new HashMap<>();
+        for (int i = 0; i < 200_000; i++) {
+            // Claves de un rango chico para forzar colisiones, reemplazos y borrados encadenados
+            long clave = random.nextInt(300) * 1_000_003L;
+            if (random.nextInt(3) == 0) {
+                assertEquals(esperado.remove(clave), mapa.remove(clave));
+            } else {
+                assertEquals(esperado.put(clave, i), mapa.put(clave, i));
+            }
+            assertEquals(esperado.size(), mapa.size());
+        }
+        for (Map.Entry<Long, Integer> entrada : esperado.entrySet()) {
+            assertEquals(entrada.getValue(), mapa.get(entrada.getKey()));
+        }
+    }
+}
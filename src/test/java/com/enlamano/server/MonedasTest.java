@@ -0,0 +1,49 @@
+package com.enlamano.server;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+
+public class MonedasTest {
+
+    @Before
+    public void configurar() {
+        Properties config = new Properties();
+        config.setProperty("monedas.alias", "2225:USD, 9800:UI,malo:US$");
+        Monedas.configurar(config);
+    }
+
+    @Test
+    public void losAliasSeTraducenASuCanonica() {
+        assertEquals(Monedas.id("USD"), Monedas.id("2225"));
+        assertEquals("USD", Monedas.canonica("2225"));
+        assertEquals("UI", Monedas.canonica("9800"));
+        // Alias con canónica inválida: ignorado
+        assertEquals("MALO", Monedas.canonica("malo"));
+    }
+
+    @Test
+    public void codigosNoRegistradosUsanSuValorEmpaquetado() {
+        long id = Monedas.id("xyz");
+        assertEquals(Monedas.empaquetar("XYZ"), id);
+        assertEquals("XYZ", Monedas.codigo(id));
+        assertEquals("XYZ", Monedas.canonica("xyz"));
+        for (String codigo : new String[] {"0", "9", "A", "Z", "00000000", "ZZZZZZZZ", "A1B2C3D4"}) {
+            long empaquetado = Monedas.empaquetar(codigo);
+            assertEquals(codigo, Monedas.desempaquetar(empaquetado));
+            assertEquals(0, empaquetado >>> Monedas.BITS);
+        }
+    }
+
+    @Test
+    public void codigosInvalidos() {
+        assertEquals(Monedas.DESCONOCIDA, Monedas.id(null));
+        assertEquals(Monedas.DESCONOCIDA, Monedas.id("   "));
+        assertEquals(Monedas.DESCONOCIDA, Monedas.id("123456789"));
+        assertEquals(Monedas.DESCONOCIDA, Monedas.id("U-S"));
+        assertEquals("U-S", Monedas.canonica("U-S"));
+    }
+}
@@ -0,0 +1,243 @@
+package com.enlamano.server;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Dos instancias en localhost replicando cotizaciones a través del endpoint interno, con un
+ * BCU local ({@link SoapStub}) compartido
+ */
+public class PeerRateReplicatorTest {
+
+    private static final String TOKEN = "secreto-de-prueba";
+
+    private SoapStub bcu;
+    private Nodo a;
+    private Nodo b;
+
+    @Before
+    public void iniciar() throws Exception {
+        bcu = new SoapStub(39.5, 1);
+        int puertoA = puertoLibre();
+        int puertoB = puertoLibre();
+        String nodos = "http://127.0.0.1:" + puertoA + ",http://127.0.0.1:" + puertoB;
+        a = new Nodo(puertoA, nodos, bcu.getUrl());
+        b = new Nodo(puertoB, nodos, bcu.getUrl());
+    }
+
+    @After
+    public void detener() throws Exception {
+        a.detener();
+        b.detener();
+        bcu.detener();
+    }
+
+    @Test
+    public void consultaAlPropietario() {
+        String fecha = fechaPropiaDe(a);
+        a.cache.put("USD", fecha, cotizacion(fecha, 39.5));
+
+        BcuSoapResponse remota = b.replicator.consultarPropietario("USD", fecha);
+        assertNotNull(remota);
+        assertEquals(39.5, remota.getVenta(), 0.0);
+        assertEquals(1, b.replicator.getAciertosRemotos());
+    }
+
+    @Test
+    public void elPropietarioConsultaAlBcuUnaSolaVezPorClave() throws Exception {
+        final String fecha = fechaPropiaDe(a);
+        bcu.setDemoraMillis(200);
+        ExecutorService hilos = Executors.newFixedThreadPool(6);
+        try {
+            List<Future<BcuSoapResponse>> respuestas = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                respuestas.add(hilos.submit(new Callable<BcuSoapResponse>() {
+                    @Override
+                    public BcuSoapResponse call() {
+                        return b.replicator.consultarPropietario("USD", fecha);
+                    }
+                }));
+            }
+            for (Future<BcuSoapResponse> respuesta : respuestas) {
+                assertEquals(39.5, respuesta.get().getVenta(), 0.0);
+            }
+        } finally {
+            hilos.shutdownNow();
+        }
+        assertEquals(1, bcu.getRecibidas());
+        assertNotNull(a.cache.get("USD", fecha));
+        assertEquals(6, b.replicator.getAciertosRemotos());
+    }
+
+    @Test
+    public void soloElPropietarioConsultaAlBcu() throws Exception {
+        // b recibe la consulta de una fecha que no le pertenece: no la reenvía ni va al BCU
+        String fecha = fechaPropiaDe(a);
+        try (CloseableHttpClient http = HttpClients.createDefault()) {
+            HttpGet get = new HttpGet(b.url + PeerRateReplicator.RUTA_INTERNA + "?moneda=USD&fecha=" + fecha);
+            get.setHeader(PeerRateReplicator.HEADER_TOKEN, TOKEN);
+            try (CloseableHttpResponse response = http.execute(get)) {
+                assertEquals(404, response.getStatusLine().getStatusCode());
+            }
+        }
+        assertEquals(0, bcu.getRecibidas());
+    }
+
+    @Test
+    public void evitaAlPropietarioTrasFallosConsecutivos() throws Exception {
+        String fecha = fechaPropiaDe(a);
+        a.server.stop();
+
+        for (int i = 0; i < 2; i++) {
+            assertNull(b.replicator.consultarPropietario("USD", fecha));
+        }
+        assertEquals(2, b.replicator.getFallosRemotos());
+        assertEquals(Collections.singletonList(a.url), b.replicator.getNodosEvitados());
+
+        // Durante la espera no se lo consulta
+        assertNull(b.replicator.consultarPropietario("USD", fecha));
+        assertEquals(2, b.replicator.getFallosRemotos());
+        assertEquals(1, b.replicator.getOmitidas());
+
+        // Recuperado y vencida la espera, vuelve a consultarse
+        a.server.start();
+        Thread.sleep(1100);
+        assertNotNull(b.replicator.consultarPropietario("USD", fecha));
+        assertTrue(b.replicator.getNodosEvitados().isEmpty());
+    }
+
+    @Test
+    public void anuncioLlegaAlOtroNodo() throws Exception {
+        a.replicator.anunciar("EUR", "2024-01-10", cotizacion("2024-01-10", 43.0));
+        for (int i = 0; i < 100 && b.cache.get("EUR", "2024-01-10") == null; i++) {
+            Thread.sleep(20);
+        }
+        assertNotNull(b.cache.get("EUR", "2024-01-10"));
+        assertEquals(1, b.replicator.getAnunciosRecibidos());
+    }
+
+    @Test
+    public void anuncioSinTokenSeRechaza() throws Exception {
+        String cuerpo = "{\"moneda\":\"USD\",\"fecha\":\"2024-01-11\",\"cotizacion\":{\"moneda\":\"USD\","
+            + "\"fecha\":\"2024-01-11\",\"compra\":1.0,\"venta\":1.0}}";
+        try (CloseableHttpClient http = HttpClients.createDefault()) {
+            for (String token : new String[] {null, "", "otro"}) {
+                HttpPost post = new HttpPost(b.url + PeerRateReplicator.RUTA_INTERNA);
+                if (token != null) {
+                    post.setHeader(PeerRateReplicator.HEADER_TOKEN, token);
+                }
+                post.setEntity(new StringEntity(cuerpo, ContentType.APPLICATION_JSON));
+                try (CloseableHttpResponse response = http.execute(post)) {
+                    assertEquals(403, response.getStatusLine().getStatusCode());
+                }
+            }
+        }
+        assertNull(b.cache.get("USD", "2024-01-11"));
+    }
+
+    @Test
+    public void modoPeerSinTokenNoArranca() {
+        Properties config = new Properties();
+        config.setProperty("peer.self", "http://127.0.0.1:1");
+        config.setProperty("peer.nodes", "http://127.0.0.1:1,http://127.0.0.1:2");
+        try {
+            PeerRateReplicator.crear(config);
+            fail();
+        } catch (IllegalStateException e) {
+            // esperado
+        }
+    }
+
+    private String fechaPropiaDe(Nodo nodo) {
+        for (int dia = 1; dia <= 28; dia++) {
+            String fecha = String.format("2024-02-%02d", dia);
+            if (nodo.replicator.propietario("USD", fecha).equals(nodo.url)) {
+                return fecha;
+            }
+        }
+        throw new AssertionError("Ninguna fecha asignada al nodo " + nodo.url);
+    }
+
+    private static BcuSoapResponse cotizacion(String fecha, double venta) {
+        BcuSoapResponse cotizacion = new BcuSoapResponse();
+        cotizacion.setMoneda("USD");
+        cotizacion.setFecha(fecha);
+        cotizacion.setCompra(venta - 1);
+        cotizacion.setVenta(venta);
+        return cotizacion;
+    }
+
+    private static int puertoLibre() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static final class Nodo {
+        private final String url;
+        private final BcuSoapClient client;
+        private final RateCache cache;
+        private final PeerRateReplicator replicator;
+        private final Server server;
+
+        Nodo(int puerto, String nodos, String bcu) throws Exception {
+            url = "http://127.0.0.1:" + puerto;
+            Properties config = new Properties();
+            config.setProperty("peer.self", url);
+            config.setProperty("peer.nodes", nodos);
+            config.setProperty("peer.token", TOKEN);
+            config.setProperty("peer.timeout.ms", "2000");
+            config.setProperty("peer.failures", "2");
+            config.setProperty("peer.backoff.seconds", "1");
+            config.setProperty("bcu.endpoints", bcu);
+            config.setProperty("router.explore", "0");
+            client = new BcuSoapClient(config);
+            cache = client.getRateCache();
+            replicator = client.getPeerReplicator();
+
+            server = new Server();
+            ServerConnector connector = new ServerConnector(server);
+            connector.setHost("127.0.0.1");
+            connector.setPort(puerto);
+            server.addConnector(connector);
+            ServletContextHandler context = new ServletContextHandler();
+            context.addServlet(new ServletHolder(new PeerRateServlet(client, replicator)), PeerRateReplicator.RUTA_INTERNA);
+            server.setHandler(context);
+            server.start();
+        }
+
+        void detener() throws Exception {
+            client.close();
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.enlamano.server;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+
+public class PriorityLanesTest {
+
+    private PriorityLanes lanes;
+
+    @Before
+    public void crear() {
+        Properties config = new Properties();
+        config.setProperty("lanes.batch.apikeys", "clave-lote");
+        lanes = new PriorityLanes(config);
+    }
+
+    @After
+    public void cerrar() {
+        lanes.shutdown();
+    }
+
+    private static HttpServletRequest peticion(String apiKey, String prioridad) {
+        final Map<String, String> headers = new HashMap<>();
+        headers.put(PriorityLanes.HEADER_API_KEY, apiKey);
+        headers.put(PriorityLanes.HEADER_PRIORIDAD, prioridad);
+        return (HttpServletRequest) Proxy.newProxyInstance(PriorityLanesTest.class.getClassLoader(),
+            new Class<?>[] {HttpServletRequest.class}, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().equals("getHeader")) {
+                        return headers.get(args[0]);
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+    }
+
+    @Test
+    public void apiKeyDeLoteNoPuedeSubirsePorHeader() {
+        assertEquals(TrafficClass.BATCH, lanes.clasificar(peticion("clave-lote", "interactivo")));
+        assertEquals(TrafficClass.BATCH, lanes.clasificar(peticion("clave-lote", null)));
+    }
+
+    @Test
+    public void headerSoloBajaLaPrioridad() {
+        assertEquals(TrafficClass.BATCH, lanes.clasificar(peticion("otra", "batch")));
+        assertEquals(TrafficClass.INTERACTIVE, lanes.clasificar(peticion(null, "interactivo")));
+        assertEquals(TrafficClass.INTERACTIVE, lanes.clasificar(peticion(null, null)));
+    }
+}
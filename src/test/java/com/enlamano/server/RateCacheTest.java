@@ -0,0 +1,84 @@
+package com.enlamano.server;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class RateCacheTest {
+
+    private static RateCache cache(int maxEntradas, int ttlHoySegundos) {
+        Properties config = new Properties();
+        config.setProperty("cache.max.entries", String.valueOf(maxEntradas));
+        config.setProperty("cache.ttl.today.seconds", String.valueOf(ttlHoySegundos));
+        return new RateCache(config);
+    }
+
+    private static BcuSoapResponse cotizacion(String fecha) {
+        return new BcuSoapResponse("USD", fecha, 39.1, 40.2, fecha);
+    }
+
+    @Test
+    public void desplazaLaMenosUsadaRecientemente() {
+        RateCache cache = cache(3, 300);
+        cache.put("USD", "2024-01-01", cotizacion("2024-01-01"));
+        cache.put("USD", "2024-01-02", cotizacion("2024-01-02"));
+        cache.put("USD", "2024-01-03", cotizacion("2024-01-03"));
+
+        // Usar la más antigua la pasa al frente: la desplazada es la del día 2
+        assertNotNull(cache.get("USD", "2024-01-01"));
+        cache.put("USD", "2024-01-04", cotizacion("2024-01-04"));
+        assertEquals(3, cache.size());
+        assertNull(cache.get("USD", "2024-01-02"));
+        assertNotNull(cache.get("USD", "2024-01-01"));
+
+        // Ahora la menos usada es la del día 3
+        cache.put("USD", "2024-01-05", cotizacion("2024-01-05"));
+        assertNull(cache.get("USD", "2024-01-03"));
+        assertNotNull(cache.get("USD", "2024-01-04"));
+        assertNotNull(cache.get("USD", "2024-01-05"));
+        assertNotNull(cache.get("USD", "2024-01-01"));
+    }
+
+    @Test
+    public void reemplazarNoDuplicaLaEntrada() {
+        RateCache cache = cache(2, 300);
+        cache.put("USD", "2024-01-01", cotizacion("2024-01-01"));
+        cache.put("USD", "2024-01-02", cotizacion("2024-01-02"));
+        BcuSoapResponse corregida = cotizacion("2024-01-01");
+        cache.put("USD", "01/01/2024", corregida);
+
+        assertEquals(2, cache.size());
+        assertSame(corregida, cache.get("USD", "2024-01-01"));
+        // El reemplazo la dejó al frente
+        cache.put("USD", "2024-01-03", cotizacion("2024-01-03"));
+        assertNull(cache.get("USD", "2024-01-02"));
+        assertSame(corregida, cache.get("USD", "2024-01-01"));
+    }
+
+    @Test
+    public void lasDeHoyExpiranYLasPasadasNo() {
+        RateCache cache = cache(10, 0);
+        String hoy = LocalDate.now().toString();
+        cache.put("USD", hoy, cotizacion(hoy));
+        cache.put("USD", "2020-06-01", cotizacion("2020-06-01"));
+
+        assertNull(cache.get("USD", hoy));
+        assertEquals(1, cache.size());
+        assertNotNull(cache.get("USD", "2020-06-01"));
+    }
+
+    @Test
+    public void noCacheaClavesInvalidas() {
+        RateCache cache = cache(10, 300);
+        cache.put("US$", "2024-01-01", cotizacion("2024-01-01"));
+        cache.put("USD", "ayer", cotizacion("ayer"));
+        assertEquals(0, cache.size());
+        assertNull(cache.get("US$", "2024-01-01"));
+    }
+}
@@ -0,0 +1,88 @@
+package com.enlamano.server;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RatePublisherTest {
+
+    private BcuSoapClient client;
+    private RatePublisher publisher;
+
+    @Before
+    public void crear() {
+        Properties config = new Properties();
+        config.setProperty("bcu.endpoints", "http://127.0.0.1:9/svc");
+        config.setProperty("stream.poll.seconds", "3600");
+        config.setProperty("stream.heartbeat.seconds", "3600");
+        client = new BcuSoapClient(config);
+        publisher = new RatePublisher(client);
+    }
+
+    @After
+    public void detener() {
+        publisher.shutdown();
+        client.close();
+    }
+
+    @Test
+    public void difundeFueraDelHiloQueActualizaLaCache() throws Exception {
+        final BlockingQueue<String> hilos = new LinkedBlockingQueue<>();
+        final CountDownLatch liberar = new CountDownLatch(1);
+        publisher.suscribir(new RatePublisher.Subscriber() {
+            @Override
+            public void enviar(byte[] evento) {
+                hilos.add(Thread.currentThread().getName());
+                try {
+                    // Un suscriptor lento no debe demorar a la consulta que cargó la cache
+                    liberar.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, Collections.singleton("USD"));
+
+        String hoy = LocalDate.now().toString();
+        long inicio = System.nanoTime();
+        client.getRateCache().put("USD", hoy, new BcuSoapResponse("USD", hoy, 39.1, 40.2, hoy));
+        assertTrue(System.nanoTime() - inicio < TimeUnit.SECONDS.toNanos(1));
+
+        assertEquals("sse-publisher", hilos.poll(5, TimeUnit.SECONDS));
+        liberar.countDown();
+    }
+
+    @Test
+    public void noDifundeCotizacionesDeOtrosDias() throws Exception {
+        final BlockingQueue<byte[]> eventos = new LinkedBlockingQueue<>();
+        publisher.suscribir(new RatePublisher.Subscriber() {
+            @Override
+            public void enviar(byte[] evento) {
+                eventos.add(evento);
+            }
+        }, Collections.singleton("USD"));
+
+        String ayer = LocalDate.now().minusDays(1).toString();
+        String hoy = LocalDate.now().toString();
+        client.getRateCache().put("USD", ayer, new BcuSoapResponse("USD", ayer, 39.0, 40.0, ayer));
+        client.getRateCache().put("USD", hoy, new BcuSoapResponse("USD", hoy, 39.1, 40.2, hoy));
+
+        byte[] evento = eventos.poll(5, TimeUnit.SECONDS);
+        assertNotNull(evento);
+        assertTrue(new String(evento, StandardCharsets.UTF_8).contains("\"fecha\":\"" + hoy + "\""));
+        assertNull(eventos.poll(200, TimeUnit.MILLISECONDS));
+    }
+}
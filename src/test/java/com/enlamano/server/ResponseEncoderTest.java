@@ -0,0 +1,145 @@
+package com.enlamano.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+
+public class ResponseEncoderTest {
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    private Server server;
+
+    @Before
+    public void iniciar() throws Exception {
+        server = new Server(0);
+        ServletContextHandler context = new ServletContextHandler();
+        context.addServlet(new ServletHolder(new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                ResponseEncoder.Formato formato = ResponseEncoder.negociar(request.getHeader("Accept"));
+                byte[] cuerpo = formato.codificar(serie());
+                response.setContentType(formato.getContentType());
+                response.setContentLength(cuerpo.length);
+                response.getOutputStream().write(cuerpo);
+            }
+        }), "/serie");
+        server.setHandler(AxisServerMain.configureGzip(context));
+        server.start();
+    }
+
+    @After
+    public void detener() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void eligeElRangoDeMayorCalidad() {
+        assertEquals(ResponseEncoder.Formato.CBOR,
+            ResponseEncoder.negociar("application/json;q=0.5, application/cbor"));
+        assertEquals(ResponseEncoder.Formato.SMILE,
+            ResponseEncoder.negociar("application/cbor;q=0.8, application/x-jackson-smile;q=0.9, application/json;q=0.1"));
+        assertEquals(ResponseEncoder.Formato.JSON,
+            ResponseEncoder.negociar("application/cbor;q=0.2, application/json;q=0.7"));
+        // A igual calidad gana el primero listado
+        assertEquals(ResponseEncoder.Formato.CBOR,
+            ResponseEncoder.negociar("application/cbor, application/x-jackson-smile"));
+        assertEquals(ResponseEncoder.Formato.CBOR, ResponseEncoder.negociar("APPLICATION/CBOR"));
+    }
+
+    @Test
+    public void excluyeLosRangosConCalidadCero() {
+        assertEquals(ResponseEncoder.Formato.JSON,
+            ResponseEncoder.negociar("application/cbor;q=0, application/json;q=0.1"));
+        assertEquals(ResponseEncoder.Formato.SMILE,
+            ResponseEncoder.negociar("application/json;q=0, application/x-jackson-smile;q=0.3"));
+        // Calidad inválida: se trata como 0
+        assertEquals(ResponseEncoder.Formato.JSON,
+            ResponseEncoder.negociar("application/cbor;q=alta, application/json;q=0.1"));
+    }
+
+    @Test
+    public void losComodinesEquivalenAJson() {
+        assertEquals(ResponseEncoder.Formato.JSON, ResponseEncoder.negociar("*/*"));
+        assertEquals(ResponseEncoder.Formato.JSON, ResponseEncoder.negociar("application/*"));
+        assertEquals(ResponseEncoder.Formato.JSON,
+            ResponseEncoder.negociar("application/cbor;q=0.5, */*"));
+        assertEquals(ResponseEncoder.Formato.CBOR,
+            ResponseEncoder.negociar("application/cbor, application/*;q=0.5"));
+        assertEquals(ResponseEncoder.Formato.SMILE,
+            ResponseEncoder.negociar("*/*;q=0.1, application/x-jackson-smile"));
+    }
+
+    @Test
+    public void sinFormatoSoportadoSeRespondeJson() {
+        assertEquals(ResponseEncoder.Formato.JSON, ResponseEncoder.negociar(null));
+        assertEquals(ResponseEncoder.Formato.JSON, ResponseEncoder.negociar(""));
+        assertEquals(ResponseEncoder.Formato.JSON, ResponseEncoder.negociar("text/html, application/xml;q=0.9"));
+        assertEquals(ResponseEncoder.Formato.JSON, ResponseEncoder.negociar("application/cbor;q=0"));
+    }
+
+    @Test
+    public void jsonComprimidoIdaYVuelta() throws Exception {
+        assertEquals(serie(), obtenerComprimido(ResponseEncoder.MIME_JSON, JSON));
+    }
+
+    @Test
+    public void smileComprimidoIdaYVuelta() throws Exception {
+        assertEquals(serie(), obtenerComprimido(ResponseEncoder.MIME_SMILE, new ObjectMapper(new SmileFactory())));
+    }
+
+    @Test
+    public void cborComprimidoIdaYVuelta() throws Exception {
+        assertEquals(serie(), obtenerComprimido(ResponseEncoder.MIME_CBOR, new ObjectMapper(new CBORFactory())));
+    }
+
+    private JsonNode obtenerComprimido(String accept, ObjectMapper mapper) throws Exception {
+        int puerto = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+        HttpURLConnection conexion = (HttpURLConnection) new URL("http://127.0.0.1:" + puerto + "/serie").openConnection();
+        conexion.setConnectTimeout(2000);
+        conexion.setReadTimeout(10000);
+        conexion.setRequestProperty("Accept", accept);
+        conexion.setRequestProperty("Accept-Encoding", "gzip");
+        assertEquals(200, conexion.getResponseCode());
+        assertEquals("gzip", conexion.getHeaderField("Content-Encoding"));
+        assertEquals(accept, conexion.getContentType().split(";")[0]);
+        try (InputStream cuerpo = new GZIPInputStream(conexion.getInputStream())) {
+            return mapper.readTree(cuerpo);
+        }
+    }
+
+    // Serie histórica por encima del umbral de compresión
+    private static JsonNode serie() {
+        ObjectNode respuesta = JSON.createObjectNode();
+        respuesta.put("tipoConsulta", "historico");
+        ArrayNode registros = respuesta.putArray("registros");
+        for (int i = 0; i < 200; i++) {
+            ObjectNode registro = registros.addObject();
+            registro.put("fecha", "2020-01-" + (i % 28 + 1));
+            registro.put("compra", 38.5 + i / 100.0);
+            registro.put("venta", 39.5 + i / 100.0);
+        }
+        return respuesta;
+    }
+}
@@ -0,0 +1,119 @@
+package com.enlamano.server;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Servicio SOAP local que imita al BCU: responde ConsultarCotizacion con la fecha pedida
+ * y con {@code venta} igual al valor configurado, tras una demora sin ocupar hilos.
+ * En modo falla responde HTTP 500 sin sobre SOAP (error de transporte).
+ */
+class SoapStub {
+
+    private static final Pattern FECHA = Pattern.compile("<[^>]*fecha>([^<]*)<");
+    private static final String RESPUESTA = "<?xml version=\"1.0\" encoding=\"utf-8\"?>"
+        + "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\"><s:Body>"
+        + "<tns:ConsultarCotizacionResponse xmlns:tns=\"http://tempuri.org/\"><tns:ConsultarCotizacionResult>"
+        + "<Moneda>USD</Moneda><Fecha>%s</Fecha><TipoCambioCompra>39.1</TipoCambioCompra>"
+        + "<TipoCambioVenta>%s</TipoCambioVenta></tns:ConsultarCotizacionResult>"
+        + "</tns:ConsultarCotizacionResponse></s:Body></s:Envelope>";
+
+    private final Server server;
+    private final ScheduledExecutorService demoras = Executors.newScheduledThreadPool(2);
+    private final AtomicInteger recibidas = new AtomicInteger();
+    private final double venta;
+    private volatile long demoraMillis;
+    private volatile boolean fallando;
+
+    SoapStub(double venta, long demoraMillis) throws Exception {
+        this.venta = venta;
+        this.demoraMillis = demoraMillis;
+        server = new Server(new QueuedThreadPool(64));
+        ServerConnector connector = new ServerConnector(server);
+        connector.setHost("127.0.0.1");
+        connector.setAcceptQueueSize(4096);
+        server.addConnector(connector);
+        ServletContextHandler context = new ServletContextHandler();
+        ServletHolder holder = new ServletHolder(new Servicio());
+        holder.setAsyncSupported(true);
+        context.addServlet(holder, "/*");
+        server.setHandler(context);
+        server.start();
+    }
+
+    String getUrl() {
+        return "http://127.0.0.1:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort() + "/svc";
+    }
+
+    int getRecibidas() {
+        return recibidas.get();
+    }
+
+    void setDemoraMillis(long demoraMillis) {
+        this.demoraMillis = demoraMillis;
+    }
+
+    void setFallando(boolean fallando) {
+        this.fallando = fallando;
+    }
+
+    void detener() throws Exception {
+        demoras.shutdownNow();
+        server.stop();
+    }
+
+    private class Servicio extends HttpServlet {
+        @Override
+        protected void doPost(HttpServletRequest request, final HttpServletResponse response) throws IOException {
+            recibidas.incrementAndGet();
+            byte[] cuerpo = new byte[Math.max(0, request.getContentLength())];
+            int leidos = 0;
+            while (leidos < cuerpo.length) {
+                int n = request.getInputStream().read(cuerpo, leidos, cuerpo.length - leidos);
+                if (n < 0) {
+                    break;
+                }
+                leidos += n;
+            }
+            Matcher matcher = FECHA.matcher(new String(cuerpo, 0, leidos, StandardCharsets.UTF_8));
+            final String fecha = matcher.find() ? matcher.group(1) : "";
+            final boolean falla = fallando;
+            final AsyncContext async = request.startAsync();
+            demoras.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (falla) {
+                            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                        } else {
+                            byte[] xml = String.format(RESPUESTA, fecha, venta).getBytes(StandardCharsets.UTF_8);
+                            response.setContentType("text/xml; charset=utf-8");
+                            response.setContentLength(xml.length);
+                            response.getOutputStream().write(xml);
+                        }
+                    } catch (IOException e) {
+                        // El cliente abandonó la conexión
+                    } finally {
+                        async.complete();
+                    }
+                }
+            }, demoraMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.enlamano.server;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Readiness en /api/ready antes y después del precalentamiento, contra un BCU local ({@link SoapStub})
+ */
+public class StartupWarmupTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ExecutorService ejecutor = Executors.newCachedThreadPool();
+
+    private SoapStub bcu;
+    private BcuSoapClient client;
+    private PriorityLanes priorityLanes;
+    private Server server;
+
+    @After
+    public void detener() throws Exception {
+        ejecutor.shutdownNow();
+        if (server != null) {
+            server.stop();
+        }
+        if (priorityLanes != null) {
+            priorityLanes.shutdown();
+        }
+        if (client != null) {
+            client.close();
+        }
+        if (bcu != null) {
+            bcu.detener();
+        }
+    }
+
+    @Test
+    public void respondeNoDisponibleHastaTerminarElPrecalentamiento() throws Exception {
+        bcu = new SoapStub(39.5, 1);
+        StartupWarmup warmup = iniciar(bcu.getUrl(), new Properties());
+
+        HttpURLConnection antes = ready();
+        assertEquals(503, antes.getResponseCode());
+        assertEquals("CALENTANDO", cuerpo(antes).get("status").asText());
+
+        warmup.ejecutar(client, new BcuGatewayServlet(client, priorityLanes), ejecutor);
+
+        HttpURLConnection despues = ready();
+        assertEquals(200, despues.getResponseCode());
+        JsonNode estado = cuerpo(despues);
+        assertEquals("LISTO", estado.get("status").asText());
+        assertTrue(estado.toString(), estado.get("arranque").get("etapasMs").has("conexionBcu"));
+        assertEquals(0, estado.get("arranque").get("etapasFallidas").size());
+    }
+
+    @Test
+    public void quedaListoAunqueElBcuSeaInaccesibleAlArrancar() throws Exception {
+        StartupWarmup warmup = iniciar("http://127.0.0.1:" + puertoLibre() + "/", new Properties());
+        assertEquals(503, ready().getResponseCode());
+
+        warmup.ejecutar(client, new BcuGatewayServlet(client, priorityLanes), ejecutor);
+
+        HttpURLConnection despues = ready();
+        assertEquals(200, despues.getResponseCode());
+        assertEquals(Collections.singleton("conexionBcu"), warmup.getFallidas());
+        assertEquals("conexionBcu", cuerpo(despues).get("arranque").get("etapasFallidas").get(0).asText());
+    }
+
+    @Test
+    public void quedaListoSiLasConexionesNoTerminanATiempo() throws Exception {
+        bcu = new SoapStub(39.5, 1);
+        Properties config = new Properties();
+        config.setProperty("startup.prewarm.timeout.ms", "100");
+        StartupWarmup warmup = iniciar(bcu.getUrl(), config);
+
+        // Ejecutor ocupado: la conexión inicial nunca llega a empezar
+        ExecutorService ocupado = Executors.newSingleThreadExecutor();
+        final CountDownLatch liberar = new CountDownLatch(1);
+        ocupado.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    liberar.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        try {
+            warmup.ejecutar(client, new BcuGatewayServlet(client, priorityLanes), ocupado);
+        } finally {
+            liberar.countDown();
+            ocupado.shutdownNow();
+        }
+
+        assertEquals(200, ready().getResponseCode());
+        assertEquals(Collections.singleton("conexionBcu"), warmup.getFallidas());
+    }
+
+    @Test
+    public void quedaListoSiFallaElPrecalentamientoSintetico() throws Exception {
+        bcu = new SoapStub(39.5, 1);
+        StartupWarmup warmup = iniciar(bcu.getUrl(), new Properties());
+
+        // Sin servlet, la etapa de serialización falla
+        warmup.ejecutar(client, null, ejecutor);
+
+        assertEquals(200, ready().getResponseCode());
+        assertEquals(Collections.singleton("sintetico"), warmup.getFallidas());
+    }
+
+    private StartupWarmup iniciar(String endpoint, Properties config) throws Exception {
+        config.setProperty("bcu.endpoints", endpoint);
+        config.setProperty("connection.timeout", "1000");
+        config.setProperty("socket.timeout", "5000");
+        config.setProperty("router.explore", "0");
+        config.setProperty("startup.warmup.iterations", "10");
+        client = new BcuSoapClient(config);
+        priorityLanes = new PriorityLanes(config);
+        StartupWarmup warmup = new StartupWarmup();
+
+        server = new Server(0);
+        ServletContextHandler context = new ServletContextHandler();
+        context.addServlet(new ServletHolder(new HealthCheckServlet(client, priorityLanes, null, warmup)),
+            HealthCheckServlet.RUTA_READY);
+        server.setHandler(context);
+        server.start();
+        return warmup;
+    }
+
+    private HttpURLConnection ready() throws Exception {
+        int puerto = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+        HttpURLConnection conexion = (HttpURLConnection) new URL("http://127.0.0.1:" + puerto
+            + HealthCheckServlet.RUTA_READY).openConnection();
+        conexion.setConnectTimeout(2000);
+        conexion.setReadTimeout(10000);
+        return conexion;
+    }
+
+    private JsonNode cuerpo(HttpURLConnection conexion) throws Exception {
+        try (InputStream entrada = conexion.getResponseCode() < 400
+                ? conexion.getInputStream() : conexion.getErrorStream()) {
+            return objectMapper.readTree(entrada);
+        }
+    }
+
+    private static int puertoLibre() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
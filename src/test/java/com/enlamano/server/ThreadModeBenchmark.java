@@ -0,0 +1,112 @@
+package com.enlamano.server;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmark de los carriles hacia el BCU con hilos de plataforma vs hilos virtuales.
+ * Ambos modos usan la misma concurrencia; cada petición recorre el camino real del servidor
+ * (carril, cache, limitador, router y cliente Axis2) hasta un servicio SOAP local con
+ * latencia simulada. Cada petición usa una fecha distinta, así nunca la resuelve la cache.
+ *
+ * Ejecutar una vez por modo y comparar:
+ * <pre>
+ * mvn -P java21 test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.enlamano.server.ThreadModeBenchmark -Dserver.threads.virtual=false
+ * mvn -P java21 test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.enlamano.server.ThreadModeBenchmark -Dserver.threads.virtual=true
+ * </pre>
+ * Parámetros: -Dbench.requests (5000), -Dbench.latency.ms (50), -Dbench.concurrency (200).
+ * La concurrencia fija el tamaño del carril y el límite del limitador en ambos modos; por encima
+ * de 200 la acota el pool de conexiones hacia el BCU.
+ */
+public class ThreadModeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int peticiones = Integer.getInteger("bench.requests", 5000);
+        long latenciaMs = Long.getLong("bench.latency.ms", 50L);
+        int concurrencia = Integer.getInteger("bench.concurrency", 200);
+
+        SoapStub stub = new SoapStub(40.0, latenciaMs);
+
+        Properties config = new Properties();
+        config.setProperty("bcu.endpoints", stub.getUrl());
+        config.setProperty("connection.timeout", "10000");
+        config.setProperty("socket.timeout", "30000");
+        config.setProperty("cache.max.entries", String.valueOf(peticiones * 2));
+        config.setProperty("lanes.interactivo.threads", String.valueOf(concurrencia));
+        config.setProperty("lanes.interactivo.virtual.threads", String.valueOf(concurrencia));
+        config.setProperty("lanes.interactivo.queue", String.valueOf(peticiones));
+        // Límite fijo (mínimo = máximo) para que ambos modos midan con la misma concurrencia
+        config.setProperty("limiter.min", String.valueOf(concurrencia));
+        config.setProperty("limiter.initial", String.valueOf(concurrencia));
+        config.setProperty("limiter.max", String.valueOf(concurrencia));
+        config.setProperty("limiter.queue.max", String.valueOf(peticiones));
+        config.setProperty("limiter.queue.timeout.ms", "60000");
+        BcuSoapClient client = new BcuSoapClient(config);
+        PriorityLanes lanes = new PriorityLanes(config);
+
+        // Calentamiento, con fechas que no se repiten en la medición
+        int calentamiento = Math.min(1000, peticiones);
+        ejecutar(lanes, client, LocalDate.of(1990, 1, 1), calentamiento, new long[calentamiento]);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+
+        long[] latencias = new long[peticiones];
+        long inicio = System.nanoTime();
+        int fallidas = ejecutar(lanes, client, LocalDate.of(2000, 1, 1), peticiones, latencias);
+        long totalNanos = System.nanoTime() - inicio;
+
+        int limiteFinal = client.getLimiter().getLimite();
+        double rttMinimo = client.getLimiter().getRttMinimoMillis();
+        lanes.shutdown();
+        client.close();
+        stub.detener();
+        Arrays.sort(latencias);
+
+        System.out.println("Modo:                 " + (ThreadingMode.isVirtual() ? "hilos virtuales" : "hilos de plataforma"));
+        System.out.println("Java:                 " + System.getProperty("java.version"));
+        System.out.println("Peticiones:           " + peticiones + " (concurrencia " + concurrencia
+            + ", latencia SOAP simulada " + latenciaMs + " ms)");
+        System.out.println("Fallidas:             " + fallidas);
+        System.out.printf("Tiempo total:         %.2f s%n", totalNanos / 1e9);
+        System.out.printf("Throughput:           %.1f peticiones/s%n", peticiones / (totalNanos / 1e9));
+        System.out.printf("Latencia p50 / p99:   %.1f / %.1f ms%n",
+            latencias[peticiones / 2] / 1e6, latencias[(int) (peticiones * 0.99)] / 1e6);
+        System.out.printf("Limitador final:      %d (RTT mínimo %.1f ms)%n", limiteFinal, rttMinimo);
+        System.out.println("Pico hilos plataforma: " + threads.getPeakThreadCount());
+        System.exit(0);
+    }
+
+    private static int ejecutar(PriorityLanes lanes, final BcuSoapClient client, LocalDate desde,
+                                int peticiones, final long[] latencias) throws Exception {
+        final CountDownLatch fin = new CountDownLatch(peticiones);
+        final AtomicInteger fallidas = new AtomicInteger();
+        for (int i = 0; i < peticiones; i++) {
+            final int indice = i;
+            final String fecha = desde.plusDays(i).toString();
+            final long enviado = System.nanoTime();
+            lanes.ejecutar(TrafficClass.INTERACTIVE, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        client.consultarCotizacion("USD", fecha);
+                    } catch (Exception e) {
+                        fallidas.incrementAndGet();
+                    }
+                    latencias[indice] = System.nanoTime() - enviado;
+                    fin.countDown();
+                }
+            });
+        }
+        fin.await(10, TimeUnit.MINUTES);
+        return fallidas.get();
+    }
+}
@@ -0,0 +1,201 @@
+package com.enlamano.server;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Enrutamiento entre servicios SOAP locales ({@link SoapStub}) a través del cliente real
+ */
+public class UpstreamRouterTest {
+
+    private final List<SoapStub> stubs = new ArrayList<>();
+    private BcuSoapClient client;
+    private LocalDate proximaFecha = LocalDate.of(2010, 1, 1);
+
+    @After
+    public void detener() throws Exception {
+        if (client != null) {
+            client.close();
+        }
+        for (SoapStub stub : stubs) {
+            stub.detener();
+        }
+    }
+
+    @Test
+    public void eligeElEndpointDeMenorLatencia() throws Exception {
+        SoapStub lento = stub(1.0, 80);
+        SoapStub rapido = stub(2.0, 2);
+        crearCliente(lento.getUrl() + "," + rapido.getUrl(), new Properties());
+
+        for (int i = 0; i < 20; i++) {
+            consultar();
+        }
+        assertTrue("consultas al lento: " + lento.getRecibidas(), lento.getRecibidas() <= 2);
+        assertEquals(20, lento.getRecibidas() + rapido.getRecibidas());
+    }
+
+    @Test
+    public void reintentaEnOtroEndpointAnteFalloDeConexion() throws Exception {
+        SoapStub sano = stub(2.0, 1);
+        crearCliente(urlSinServicio() + "," + sano.getUrl(), new Properties());
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(2.0, consultar().getVenta(), 0.0);
+        }
+        assertEquals(5, sano.getRecibidas());
+        UpstreamRouter.Endpoint caido = client.getUpstreamRouter().getEndpoints().get(0);
+        assertTrue(caido.getFallos() >= 1);
+    }
+
+    @Test
+    public void expulsaTrasFallosConsecutivosConEsperaCreciente() throws Exception {
+        SoapStub fallando = stub(1.0, 1);
+        fallando.setFallando(true);
+        SoapStub sano = stub(2.0, 1);
+        Properties config = new Properties();
+        config.setProperty("router.eject.failures", "1");
+        config.setProperty("router.eject.seconds", "1");
+        crearCliente(fallando.getUrl() + "," + sano.getUrl(), config);
+        UpstreamRouter.Endpoint endpoint = client.getUpstreamRouter().getEndpoints().get(0);
+
+        // El primer intento falla con HTTP 500, la consulta sigue en el otro endpoint
+        assertEquals(2.0, consultar().getVenta(), 0.0);
+        assertEquals(1, fallando.getRecibidas());
+        assertTrue(endpoint.isExpulsado());
+
+        // Durante la expulsión no recibe tráfico
+        for (int i = 0; i < 5; i++) {
+            consultar();
+        }
+        assertEquals(1, fallando.getRecibidas());
+
+        // Vencida la primera expulsión (1 s) recibe un único sondeo, que falla: nueva expulsión de 2 s
+        Thread.sleep(1200);
+        consultar();
+        assertEquals(2, fallando.getRecibidas());
+        assertTrue(endpoint.isExpulsado());
+        Thread.sleep(1200);
+        consultar();
+        assertEquals("la segunda expulsión dura el doble", 2, fallando.getRecibidas());
+
+        // Recuperado: el siguiente sondeo lo reincorpora
+        fallando.setFallando(false);
+        Thread.sleep(1500);
+        consultar();
+        assertEquals(3, fallando.getRecibidas());
+        assertFalse(endpoint.isExpulsado());
+    }
+
+    @Test
+    public void unSoloSondeoALaVez() throws Exception {
+        SoapStub a = stub(1.0, 1);
+        SoapStub b = stub(2.0, 1);
+        Properties config = new Properties();
+        config.setProperty("router.eject.failures", "1");
+        config.setProperty("router.eject.seconds", "0");
+        config.setProperty("router.explore", "0");
+        crearCliente(a.getUrl() + "," + b.getUrl(), config);
+        UpstreamRouter router = client.getUpstreamRouter();
+        UpstreamRouter.Endpoint primero = router.getEndpoints().get(0);
+
+        // Expulsión de duración 0: vencida de inmediato, lista para sondeo
+        primero.registrarFallo();
+        assertTrue(primero.isExpulsado());
+
+        List<UpstreamRouter.Endpoint> ninguno = Collections.emptyList();
+        assertSame(primero, router.elegir(ninguno));
+        // Mientras el sondeo está en curso, las demás consultas van a otro endpoint
+        assertNotSame(primero, router.elegir(ninguno));
+        assertNotSame(primero, router.elegir(ninguno));
+
+        primero.registrarExito(1_000_000L);
+        assertFalse(primero.isExpulsado());
+    }
+
+    @Test
+    public void soloElSondeoDecideLaReincorporacion() throws Exception {
+        SoapStub a = stub(1.0, 1);
+        SoapStub b = stub(2.0, 1);
+        Properties config = new Properties();
+        config.setProperty("router.eject.failures", "1");
+        config.setProperty("router.eject.seconds", "0");
+        crearCliente(a.getUrl() + "," + b.getUrl(), config);
+        UpstreamRouter router = client.getUpstreamRouter();
+        final UpstreamRouter.Endpoint primero = router.getEndpoints().get(0);
+
+        primero.registrarFallo();
+        assertSame(primero, router.elegir(Collections.<UpstreamRouter.Endpoint>emptyList()));
+
+        // Mientras el sondeo de este hilo sigue en curso, los resultados de otras consultas
+        // al endpoint no lo reincorporan ni liberan el sondeo
+        Thread otra = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                primero.registrarExito(1_000_000L);
+                primero.registrarFallo();
+                primero.registrarExito(1_000_000L);
+            }
+        });
+        otra.start();
+        otra.join();
+        assertTrue(primero.isExpulsado());
+        assertNotSame(primero, router.elegir(Collections.<UpstreamRouter.Endpoint>emptyList()));
+
+        primero.registrarExito(1_000_000L);
+        assertFalse(primero.isExpulsado());
+    }
+
+    @Test
+    public void sinIntentosConfiguradosHaceAlMenosUno() throws Exception {
+        SoapStub sano = stub(2.0, 1);
+        Properties config = new Properties();
+        config.setProperty("router.max.attempts", "0");
+        crearCliente(sano.getUrl(), config);
+
+        assertEquals(2.0, consultar().getVenta(), 0.0);
+        assertEquals(1, sano.getRecibidas());
+    }
+
+    private SoapStub stub(double venta, long demoraMillis) throws Exception {
+        SoapStub stub = new SoapStub(venta, demoraMillis);
+        stubs.add(stub);
+        return stub;
+    }
+
+    private void crearCliente(String endpoints, Properties config) {
+        config.setProperty("bcu.endpoints", endpoints);
+        config.setProperty("connection.timeout", "1000");
+        config.setProperty("socket.timeout", "5000");
+        if (!config.containsKey("router.explore")) {
+            config.setProperty("router.explore", "0");
+        }
+        client = new BcuSoapClient(config);
+    }
+
+    // Fecha distinta en cada consulta para no resolverla desde la cache
+    private BcuSoapResponse consultar() throws Exception {
+        proximaFecha = proximaFecha.plusDays(1);
+        return client.consultarCotizacion("USD", proximaFecha.toString());
+    }
+
+    private static String urlSinServicio() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return "http://127.0.0.1:" + socket.getLocalPort() + "/svc";
+        }
+    }
+}